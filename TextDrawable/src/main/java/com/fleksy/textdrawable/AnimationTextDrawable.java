@@ -1,17 +1,14 @@
 package com.fleksy.textdrawable;
 
 import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.graphics.Canvas;
-import android.graphics.ColorFilter;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.text.Layout;
 import android.text.TextPaint;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Edited by Fleksy on 2/24/16.
  * Editor Greyski.
@@ -19,37 +16,45 @@ import java.util.List;
  */
 abstract class AnimationTextDrawable extends TextDrawable {
 
-    private boolean rtlLanguage;
-
     /**
-     * Old paint to keep track of previous paint state of text
+     * How long (ms) the animation buffers are held onto after the last animation ends. Most
+     * drawables settle and never animate again, so there's no reason to keep paying for them.
      */
-    private TextPaint oldPaint;
+    public static final long DEFAULT_RELEASE_DELAY = 5000;
+
+    private boolean rtlLanguage;
+
+    private long releaseDelay = DEFAULT_RELEASE_DELAY;
 
     /**
-     * the gap between characters...come on, it can't be more than 100
+     * Everything the animation needs, allocated on the first animateText() call and released
+     * once the drawable has been idle for releaseDelay. Null while not animating.
      */
-    protected float[] gaps = new float[100];
-    protected float[] oldGaps = new float[100];
+    protected AnimationState animation;
+
+    private Releaser releaser;
+
+    private FrameBudgetMonitor frameBudgetMonitor;
+
+    private TypingTrace typingTrace;
 
     /**
      * Ye olde text that will be animated into new text
      */
     protected CharSequence oldText;
 
-    /**
-     * Contains list of character elements that are different between old and new text
-     */
-    protected List<CharacterUtils.CharacterDiffResult> differentList = new ArrayList<>();
-
     protected float oldStartX = 0; // Old start X of string value
     protected float startX = 0; // Latest start X of string
-    protected float startY = 0; // Latest start Y found from baseline
+    protected float startY = 0; // Latest start Y found from the baseline of the last line
 
     public AnimationTextDrawable() {
         super();
     }
 
+    AnimationTextDrawable(TextPaint paint) {
+        super(paint);
+    }
+
     /**
      * Transition current text into new text passed in.
      *
@@ -60,12 +65,23 @@ abstract class AnimationTextDrawable extends TextDrawable {
      */
     public Animator animateText(CharSequence text, boolean rtlLanguage, View parent) {
         this.rtlLanguage = rtlLanguage;
-        this.oldText = getText();
-        text = CharacterUtils.getAlignedText(text.toString(), rtlLanguage);
-        setText(text);
+        this.oldText = drawnText();
+        if (animation == null) {
+            animation = new AnimationState();
+        }
+        animation.alpha = getPaint().getAlpha();
+        animation.oldLines.read(getLayout(), getLayoutLeft(), getBaseline()); // Old lines are gone after setText()
+        if (typingTrace != null) {
+            typingTrace.recordAnimateText(SystemClock.uptimeMillis(), text, rtlLanguage);
+        }
+        final String aligned = CharacterUtils.getAlignedText(text.toString(), rtlLanguage);
+        text = aligned;
+        super.setText(aligned); // Not recorded as a setText() of its own
         prepareAnimate();
         animatePrepare(text);
-        return animate(text, parent);
+        final Animator animator = animate(text, parent);
+        scheduleRelease(animator, parent);
+        return animator;
     }
 
     /**
@@ -75,6 +91,92 @@ abstract class AnimationTextDrawable extends TextDrawable {
         return rtlLanguage;
     }
 
+    /**
+     * @return How long (ms) the animation buffers are kept after an animation ends
+     */
+    public long getReleaseDelay() {
+        return releaseDelay;
+    }
+
+    /**
+     * Sets how long the animation buffers are kept around after an animation has ended. Set it
+     * higher for drawables that animate constantly (like a suggestion bar) to avoid churn.
+     *
+     * @param releaseDelay idle time (ms) before the animation state is released
+     */
+    public void setReleaseDelay(long releaseDelay) {
+        this.releaseDelay = releaseDelay;
+    }
+
+    /**
+     * Lets the animation drop quality when animated drawables go over their frame budget,
+     * and come back to full quality once there's room again.
+     *
+     * @param monitor shared by every drawable animating in the same window, or null to always
+     *                animate at full quality (the default)
+     */
+    public void setFrameBudgetMonitor(FrameBudgetMonitor monitor) {
+        this.frameBudgetMonitor = monitor;
+    }
+
+    /**
+     * @return The quality animation frames should currently be drawn at, one of the
+     * FrameBudgetMonitor QUALITY_ constants
+     */
+    protected final int getQuality() {
+        return frameBudgetMonitor == null
+                ? FrameBudgetMonitor.QUALITY_FULL : frameBudgetMonitor.getQuality();
+    }
+
+    /**
+     * Records every setText() and animateText() call from now on, to replay later in benchmarks.
+     *
+     * @param trace the trace to record into, or null to stop recording
+     */
+    public void setTypingTrace(TypingTrace trace) {
+        this.typingTrace = trace;
+    }
+
+    @Override
+    public boolean setText(String text) {
+        if (typingTrace != null) {
+            typingTrace.recordSetText(SystemClock.uptimeMillis(), text);
+        }
+        return super.setText(text);
+    }
+
+    /**
+     * @return True if the animation state is currently allocated
+     */
+    public boolean isAnimationAllocated() {
+        return animation != null;
+    }
+
+    /**
+     * Drops the animation buffers and the old text. The drawable goes back to drawing through
+     * the regular TextDrawable layout until the next animateText() call.
+     */
+    public void releaseAnimation() {
+        if (releaser != null) {
+            releaser.cancel();
+        }
+        if (animation != null) {
+            getPaint().setAlpha(animation.alpha);
+        }
+        animation = null;
+        oldText = null;
+    }
+
+    private void scheduleRelease(Animator animator, View parent) {
+        if (releaser == null) {
+            releaser = new Releaser();
+        }
+        releaser.cancel();
+        releaser.parent = parent;
+        releaser.animator = animator;
+        animator.addListener(releaser);
+    }
+
     /**
      * Resets the text and cancels the animation
      *
@@ -87,92 +189,190 @@ abstract class AnimationTextDrawable extends TextDrawable {
     }
 
     /**
-     * Provides the old Paint of the animated text
+     * Provides the Paint the old text is drawn with. It's the drawable's own paint, every style
+     * change made mid-animation applies to the old text as well, so there's no point in each
+     * animating drawable carrying a copy. Frames set the size and alpha before every draw.
      *
-     * @return the old TextPaint
+     * @return the TextPaint the old text is drawn with
      */
     protected final TextPaint getOldPaint() {
-        if (oldPaint == null) {
-            oldPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
-        }
-        return oldPaint;
+        return getPaint();
+    }
+
+    /**
+     * @return The text as the layout draws it, which leaves out whatever max lines cut off and
+     * includes the ellipsis, so frames show exactly what the settled layout does
+     */
+    private String drawnText() {
+        return getLayoutText().toString();
     }
 
     /**
      * Both prepares and essentially clears the animation data and sets up the text to be animated
-     * between old and new.
+     * between old and new. Every line of the layout gets its own origin, and only the lines that
+     * changed are diffed, lines that are exactly the same just move into their new spot.
      */
     private void prepareAnimate() {
-
-        for (int i = 0; i < getText().length(); i++) {
-            gaps[i] = getPaint().measureText(getText().charAt(i) + "");
+        final AnimationState animation = this.animation;
+        final String text = drawnText();
+        final String old = oldText.toString();
+        animation.text = text;
+
+        animation.ensureCapacity(text.length(), old.length());
+        animation.count = CharacterUtils.graphemeBoundaries(text, animation.bounds);
+        animation.oldCount = CharacterUtils.graphemeBoundaries(old, animation.oldBounds);
+
+        final Lines lines = animation.lines;
+        final Lines oldLines = animation.oldLines;
+        lines.read(getLayout(), getLayoutLeft(), getBaseline());
+        lines.toClusters(animation.bounds, animation.count);
+        oldLines.toClusters(animation.oldBounds, animation.oldCount);
+
+        layOut(getPaint(), text, animation.bounds, lines,
+                animation.gaps, animation.positions, animation.baselines);
+        layOut(getPaint(), old, animation.oldBounds, oldLines,
+                animation.oldGaps, animation.oldPositions, animation.oldBaselines);
+        startX = lines.x[0];
+        oldStartX = oldLines.x[0];
+        startY = lines.baselines[lines.count - 1];
+
+        CharacterUtils.diffLines(old, animation.oldBounds, oldLines.starts, oldLines.count,
+                text, animation.bounds, lines.starts, lines.count,
+                animation.moveTo, animation.stay, lines.sameLine);
+
+        animation.incoming = 0;
+        for (int i = 0; i < animation.count; i++) {
+            animation.ranks[i] = animation.stay[i] ? -1 : animation.incoming++;
+        }
+        animation.outgoing = 0;
+        for (int i = animation.oldCount - 1; i >= 0; i--) {
+            animation.oldRanks[i] = animation.moveTo[i] == -1 ? animation.outgoing++ : -1;
         }
 
-        for (int i = 0; i < oldText.length(); i++) {
-            oldGaps[i] = oldPaint.measureText(oldText.charAt(i) + "");
+        for (int line = 0; line < lines.count; line++) {
+            final int same = lines.sameLine[line];
+            lines.settled[line] = same >= 0 && oldLines.x[same] == lines.x[line]
+                    && oldLines.baselines[same] == lines.baselines[line];
+            for (int i = lines.starts[line]; i < lines.starts[line + 1]; i++) {
+                animation.settled[i] = lines.settled[line];
+            }
         }
+    }
 
-        final Rect bounds = copyBounds();
-        oldStartX = bounds.left + (bounds.width() - oldPaint.measureText(oldText.toString())) / 2f;
-        startX = bounds.left + (bounds.width() - getPaint().measureText(getText())) / 2f;
-        startY = getBottomBaseLine();
+    /**
+     * Works out where each cluster of every line goes, starting from wherever the layout put the
+     * line, so left and right aligned text doesn't jump when the animation starts or settles.
+     */
+    private static void layOut(TextPaint paint, CharSequence text, int[] clusters, Lines lines,
+                               float[] gaps, float[] positions, float[] baselines) {
+        final MetricsCache.Font font = MetricsCache.font(paint);
+        for (int line = 0; line < lines.count; line++) {
+            final int first = lines.starts[line];
+            final int end = lines.starts[line + 1];
+            for (int i = first; i < end; i++) {
+                gaps[i] = text.charAt(clusters[i]) == '\n'
+                        ? 0 : font.advance(paint, text, clusters[i], clusters[i + 1]);
+            }
+            float x = lines.x[line];
+            for (int i = first; i < end; i++) {
+                positions[i] = x;
+                baselines[i] = lines.baselines[line];
+                x += gaps[i];
+            }
+        }
+    }
 
-        differentList.clear();
-        differentList.addAll(CharacterUtils.diff(oldText, getText()));
+    /**
+     * Draws every line that's exactly the same and in the same spot as before with a single
+     * drawText() each. Frames can skip the clusters of these lines entirely, see
+     * AnimationState.settled.
+     *
+     * @param canvas canvas to draw on
+     * @param paint paint to draw the lines with
+     */
+    protected final void drawSettledLines(Canvas canvas, TextPaint paint) {
+        final AnimationState animation = this.animation;
+        final Lines lines = animation.lines;
+        final String text = animation.text;
+        for (int line = 0; line < lines.count; line++) {
+            if (!lines.settled[line] || lines.starts[line] == lines.starts[line + 1]) {
+                continue;
+            }
+            final int start = animation.bounds[lines.starts[line]];
+            int end = animation.bounds[lines.starts[line + 1]];
+            if (text.charAt(end - 1) == '\n') {
+                end--;
+            }
+            canvas.drawText(text, start, end, lines.x[line], lines.baselines[line], paint);
+        }
     }
 
     @Override
     public void draw(Canvas canvas) {
+        if (applyPendingText() && animation != null) {
+            releaseAnimation(); // Posted text replaces whatever was animating
+        }
+        if (animation == null) {
+            super.draw(canvas); // Nothing to animate, the regular layout will do just fine
+        } else if (frameBudgetMonitor == null) {
+            drawShadowedFrame(canvas);
+        } else {
+            final long start = System.nanoTime();
+            if (frameBudgetMonitor.getQuality() == FrameBudgetMonitor.QUALITY_MINIMAL) {
+                drawFinalFrame(canvas);
+            } else {
+                drawShadowedFrame(canvas);
+            }
+            frameBudgetMonitor.addCost(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The cached shadow mask only fits the settled layout, so frames get the paint's shadow.
+     */
+    private void drawShadowedFrame(Canvas canvas) {
+        final boolean shadowed = beginPaintShadow();
         drawFrame(canvas);
+        if (shadowed) {
+            endPaintShadow();
+        }
     }
 
-    @Override
-    public void setColorFilter(ColorFilter cf) {
-        super.setColorFilter(cf);
-        getOldPaint().setColorFilter(cf);
+    /**
+     * Skips straight to the end of the animation by drawing the new text through the layout.
+     */
+    private void drawFinalFrame(Canvas canvas) {
+        getPaint().setAlpha(animation.alpha); // Frames leave the paint at whatever they needed
+        getPaint().setTextSize(getTextSize() * getTextScale());
+        super.draw(canvas);
     }
 
     @Override
     protected int animateAlphaF(float ratio, boolean fullAlpha) {
-        getOldPaint().setAlpha(super.animateAlphaF(ratio, fullAlpha));
-        return getOldPaint().getAlpha();
+        final int alpha = super.animateAlphaF(ratio, fullAlpha);
+        if (animation != null) {
+            animation.alpha = alpha;
+        }
+        return alpha;
     }
 
     @Override
     public void setAlpha(int alpha) {
         super.setAlpha(alpha);
-        getOldPaint().setAlpha(alpha);
-    }
-
-    @Override
-    public void setShadow(int color) {
-        super.setShadow(color);
-        getOldPaint().setShadowLayer(10, 0, 0, color);
-    }
-
-    @Override
-    protected int animateColor(int color) {
-        super.animateColor(color);
-        getOldPaint().setColor(color);
-        return color;
-    }
-
-    @Override
-    public void setStyle(Paint.Style style) {
-        super.setStyle(style);
-        getOldPaint().setStyle(style);
-    }
-
-    @Override
-    public void setTextSize(float size) {
-        super.setTextSize(size);
-        getOldPaint().setTextSize(size);
+        if (animation != null) {
+            animation.alpha = alpha;
+        }
     }
 
     @Override
-    public void setTypeFace(Typeface font) {
-        super.setTypeFace(font);
-        getOldPaint().setTypeface(font);
+    public void setTextStyle(TextStyle style) {
+        if (style == getTextStyle()) {
+            return;
+        }
+        super.setTextStyle(style);
+        if (animation != null) {
+            animation.alpha = getPaint().getAlpha(); // The style's color brings its own alpha
+        }
     }
 
     /**
@@ -196,4 +396,229 @@ abstract class AnimationTextDrawable extends TextDrawable {
      */
     protected abstract void drawFrame(Canvas canvas);
 
+    /**
+     * Holds the per-animation buffers so drawables that never animate don't carry them around.
+     */
+    protected static final class AnimationState {
+
+        /**
+         * Alpha of the paint before the animation started messing with it
+         */
+        int alpha = CharacterUtils.MAX_ARGB;
+
+        /**
+         * The new text as the layout draws it, see drawnText()
+         */
+        String text = "";
+
+        /**
+         * Reused for the canvas clip bounds while drawing frames
+         */
+        final Rect clip = new Rect();
+
+        /**
+         * Grapheme cluster boundaries of the new and old text, cluster i spans
+         * [bounds[i], bounds[i + 1]). Everything below is indexed by cluster.
+         */
+        int[] bounds = new int[1];
+        int[] oldBounds = new int[1];
+        int count;
+        int oldCount;
+
+        /**
+         * The gap between clusters (their advance width)
+         */
+        float[] gaps = new float[0];
+        float[] oldGaps = new float[0];
+
+        /**
+         * Where each cluster starts horizontally
+         */
+        float[] positions = new float[0];
+        float[] oldPositions = new float[0];
+
+        /**
+         * Baseline of the line each cluster sits on
+         */
+        float[] baselines = new float[0];
+        float[] oldBaselines = new float[0];
+
+        /**
+         * Line structure of the new and old text
+         */
+        final Lines lines = new Lines();
+        final Lines oldLines = new Lines();
+
+        /**
+         * For every new cluster, True if its whole line is exactly the same and in the same spot
+         * as before, so drawSettledLines() takes care of it
+         */
+        boolean[] settled = new boolean[0];
+
+        /**
+         * For every old cluster, the new cluster it moves into, or -1 if it's going away
+         */
+        int[] moveTo = new int[0];
+
+        /**
+         * For every new cluster, True if an old cluster moves into it
+         */
+        boolean[] stay = new boolean[0];
+
+        /**
+         * For every new cluster that wasn't in the old text, how many new ones come before it
+         * (the order they get typed in), and for every old cluster going away, how many going
+         * away come after it (the order they get backspaced in). -1 for clusters that stay.
+         */
+        int[] ranks = new int[0];
+        int[] oldRanks = new int[0];
+
+        /**
+         * Number of new clusters that weren't in the old text, and old ones going away
+         */
+        int incoming;
+        int outgoing;
+
+        /**
+         * Grows the buffers to fit the texts, a text never has more clusters than chars
+         */
+        void ensureCapacity(int length, int oldLength) {
+            if (gaps.length < length) {
+                bounds = new int[length + 1];
+                gaps = new float[length];
+                positions = new float[length];
+                baselines = new float[length];
+                stay = new boolean[length];
+                settled = new boolean[length];
+                ranks = new int[length];
+            }
+            if (oldGaps.length < oldLength) {
+                oldBounds = new int[oldLength + 1];
+                oldGaps = new float[oldLength];
+                oldPositions = new float[oldLength];
+                oldBaselines = new float[oldLength];
+                moveTo = new int[oldLength];
+                oldRanks = new int[oldLength];
+            }
+        }
+    }
+
+    /**
+     * Where the lines of a text start and sit
+     */
+    protected static final class Lines {
+
+        int count;
+
+        /**
+         * First cluster of every line, followed by the cluster count. Holds char offsets
+         * between read() and toClusters().
+         */
+        int[] starts = new int[2];
+
+        /**
+         * Start x and baseline of every line
+         */
+        float[] x = new float[1];
+        float[] baselines = new float[1];
+
+        /**
+         * For every line, the old line with the exact same text or -1 (new lines only)
+         */
+        int[] sameLine = new int[1];
+
+        /**
+         * For every line, True if it's the same and in the same spot as before (new lines only)
+         */
+        boolean[] settled = new boolean[1];
+
+        /**
+         * Reads the lines out of the layout. Text without a layout, or a layout without lines,
+         * is treated as a single line.
+         *
+         * @param layout the layout the text is drawn with, may be null
+         * @param left where the layout is drawn horizontally
+         * @param baseline where the layout is drawn vertically
+         */
+        void read(Layout layout, float left, float baseline) {
+            count = layout == null ? 0 : layout.getLineCount();
+            if (count == 0) {
+                count = 1;
+                ensureCapacity();
+                starts[0] = 0;
+                x[0] = left;
+                baselines[0] = baseline;
+                return;
+            }
+            ensureCapacity();
+            for (int line = 0; line < count; line++) {
+                starts[line] = layout.getLineStart(line);
+                x[line] = left + layout.getLineLeft(line);
+                baselines[line] = baseline + layout.getLineBaseline(line);
+            }
+        }
+
+        /**
+         * Turns the char offsets from read() into cluster indexes, for the text the layout was
+         * built from.
+         */
+        void toClusters(int[] bounds, int clusterCount) {
+            int cluster = 0;
+            for (int line = 0; line < count; line++) {
+                final int offset = starts[line];
+                while (cluster < clusterCount && bounds[cluster] < offset) {
+                    cluster++;
+                }
+                starts[line] = cluster;
+            }
+            starts[0] = 0;
+            starts[count] = clusterCount;
+        }
+
+        private void ensureCapacity() {
+            if (x.length < count) {
+                starts = new int[count + 1];
+                x = new float[count];
+                baselines = new float[count];
+                sameLine = new int[count];
+                settled = new boolean[count];
+            }
+        }
+    }
+
+    /**
+     * Waits for the animation to end, then releases the animation state once the drawable has
+     * been idle for the release delay.
+     */
+    private final class Releaser extends AnimatorListenerAdapter implements Runnable {
+
+        View parent;
+        Animator animator;
+
+        @Override
+        public void onAnimationEnd(Animator animator) {
+            animator.removeListener(this);
+            if (animator == this.animator && parent != null) {
+                this.animator = null;
+                parent.postDelayed(this, releaseDelay);
+            }
+        }
+
+        @Override
+        public void run() {
+            parent = null;
+            releaseAnimation();
+        }
+
+        void cancel() {
+            if (animator != null) {
+                animator.removeListener(this); // A newer animation takes over the release
+                animator = null;
+            }
+            if (parent != null) {
+                parent.removeCallbacks(this);
+            }
+        }
+    }
+
 }
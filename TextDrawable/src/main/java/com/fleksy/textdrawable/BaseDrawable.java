@@ -14,11 +14,23 @@ import android.text.TextPaint;
  */
 abstract class BaseDrawable extends Drawable {
 
+    /**
+     * Radius of the shadow when one isn't specified
+     */
+    public static final float DEFAULT_SHADOW_RADIUS = 10;
+
     private int id = 0;
     private int currentColor = 0;
+    private int shadowColor = 0;
+    private float shadowRadius = DEFAULT_SHADOW_RADIUS;
     private boolean display = true;
     private final Rect currBounds = new Rect();
-    private final TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private final TextPaint paint;
+
+    /**
+     * Set while the drawable is tracked by a DrawableRegistry
+     */
+    DrawableRegistry.Entry registryEntry;
 
     /**
      * The base class for all custom drawables.
@@ -33,6 +45,14 @@ abstract class BaseDrawable extends Drawable {
     }
 
     public BaseDrawable(int color, Style style) {
+        this(color, style, new TextPaint(TextPaint.ANTI_ALIAS_FLAG));
+    }
+
+    /**
+     * Draws with the paint passed in, for tests that need to watch what the paint is asked to do
+     */
+    BaseDrawable(int color, Style style, TextPaint paint) {
+        this.paint = paint;
         setStyle(style);
         setColor(color);
         paint.setAntiAlias(true);
@@ -72,11 +92,15 @@ abstract class BaseDrawable extends Drawable {
         super.onBoundsChange(bounds);
         createPath(bounds);
         currBounds.set(bounds);
+        if (registryEntry != null) {
+            registryEntry.registry.onBoundsChanged(registryEntry, currBounds);
+        }
     }
 
     @Override
     public void setColorFilter(ColorFilter cf) {
         paint.setColorFilter(cf); // Great for changing all the non-transparent bits one color!
+        onPaintChanged();
     }
 
     @Override
@@ -144,6 +168,7 @@ abstract class BaseDrawable extends Drawable {
      */
     public void setStyle(Style style) {
         paint.setStyle(style);
+        onPaintChanged();
     }
 
     /**
@@ -188,15 +213,44 @@ abstract class BaseDrawable extends Drawable {
 
     /**
      * Updates the outline of the paint element (ya know, the outline that gives text and drawables
-     * a sort of shadow below them. Seriously, check it out if you need shadows!). Feel free to
-     * override as I know these magic numbers might not be what you're looking for. This will cancel
-     * any animations currently running (animation support for setShadow() is not currently provided)
+     * a sort of shadow below them. Seriously, check it out if you need shadows!). Uses the
+     * DEFAULT_SHADOW_RADIUS. This will cancel any animations currently running (animation support
+     * for setShadow() is not currently provided)
      *
      * @param color the color that will be applied to the outline
      */
     public void setShadow(int color) {
+        setShadow(color, DEFAULT_SHADOW_RADIUS);
+    }
+
+    /**
+     * Updates the outline of the paint element with a specific blur radius. Feel free to override
+     * as I know these magic numbers might not be what you're looking for. This will cancel any
+     * animations currently running.
+     *
+     * @param color the color that will be applied to the outline
+     * @param radius how far the outline blurs out
+     */
+    public void setShadow(int color, float radius) {
         onCancelAnimations();
-        paint.setShadowLayer(10, 0, 0, color); // Looks really freakin' sweet...or on Fleksy it does
+        shadowColor = color;
+        shadowRadius = radius;
+        paint.setShadowLayer(radius, 0, 0, color); // Looks really freakin' sweet...or on Fleksy it does
+        onPaintChanged();
+    }
+
+    /**
+     * @return The color of the shadow, 0 if one was never set
+     */
+    public int getShadowColor() {
+        return shadowColor;
+    }
+
+    /**
+     * @return The blur radius of the shadow
+     */
+    public float getShadowRadius() {
+        return shadowRadius;
     }
 
     /**
@@ -221,9 +275,29 @@ abstract class BaseDrawable extends Drawable {
     protected int animateColor(int color) {
         currentColor = color;
         paint.setColor(color);
+        onPaintChanged();
         return currentColor;
     }
 
+    /**
+     * Applies the color, style, and shadow of a TextStyle in one go, skipping the callbacks the
+     * individual setters make. The caller cancels animations and throws out its caches, once.
+     *
+     * @param shadowLayer False to leave the shadow off the paint, for when something else draws it
+     */
+    void applyStyle(int color, Style style, int shadowColor, float shadowRadius, boolean shadowLayer) {
+        currentColor = color;
+        this.shadowColor = shadowColor;
+        this.shadowRadius = shadowRadius;
+        paint.setColor(color);
+        paint.setStyle(style);
+        if (shadowLayer) {
+            paint.setShadowLayer(shadowRadius, 0, 0, shadowColor);
+        } else {
+            paint.clearShadowLayer();
+        }
+    }
+
     /**
      * @return the current integer alpha value of the paint element (0 - 255)
      */
@@ -239,7 +313,9 @@ abstract class BaseDrawable extends Drawable {
      * @return True if the coordinates are within the drawables' bounds, otherwise False
      */
     public final boolean contains(float x, float y) {
-        return new RectF(currBounds).contains(x, y);
+        final Rect bounds = currBounds; // Same checks as RectF.contains(), minus the RectF
+        return bounds.left < bounds.right && bounds.top < bounds.bottom
+                && x >= bounds.left && x < bounds.right && y >= bounds.top && y < bounds.bottom;
     }
 
     /**
@@ -293,4 +369,12 @@ abstract class BaseDrawable extends Drawable {
         //TODO: Override where necessary. Great for animations!
     }
 
+    /**
+     * Called whenever the paint's style, color, shadow, or color filter is changed through the
+     * drawable, so anything cached from drawing with the old paint can be thrown out. Alpha
+     * changes don't count, they can be applied on top of whatever was cached.
+     */
+    protected void onPaintChanged() {
+    }
+
 }
@@ -0,0 +1,295 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class BatchAutoScaler {
+
+    /**
+     * Sizes are only ever tried on a grid of STEP px up from the min size (and the max size
+     * itself), so a label settles on the same size whatever sizes its search started between.
+     * That keeps the results the same from run to run, whichever worker gets to a label first.
+     */
+    static final float STEP = 0.5f;
+
+    private final int threadCount;
+    private final ExecutorService executor;
+    private final FitCheck check;
+
+    public BatchAutoScaler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Fits whole sets of labels (like every key on a keyboard) at once, splitting the work across
+     * a pool of background threads. Keep it around and reuse it, the threads aren't free.
+     *
+     * @param threadCount how many threads the fitting is split across
+     */
+    public BatchAutoScaler(int threadCount) {
+        this(threadCount, new PaintCheck());
+    }
+
+    /**
+     * @param check how labels are checked against their space, tests swap in their own
+     */
+    BatchAutoScaler(int threadCount, FitCheck check) {
+        this.threadCount = Math.max(1, threadCount);
+        this.check = check;
+        this.executor = Executors.newFixedThreadPool(this.threadCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "BatchAutoScaler-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Finds the one size all of the labels fit at. Labels are pruned against the smallest size
+     * found so far: a label that already fits at it costs a single check and is done, only
+     * labels that don't fit search (below it) for their own size and lower it. Blocks until
+     * every label has been fit.
+     *
+     * @param entries the labels and the space they have to fit in
+     * @param typeface Typeface the labels will be rendered with (may be null)
+     * @param minSize the smallest text size allowed, used when nothing fits
+     * @param maxSize the largest (preferred) text size
+     * @return the shared uniform size. Every label fits at it, so it's also the size given for
+     * each label, use fitEach() for their own largest sizes.
+     */
+    public Result fit(List<Entry> entries, Typeface typeface, float minSize, float maxSize) {
+        return fit(entries, typeface, minSize, maxSize, false);
+    }
+
+    /**
+     * Like fit(), but every label also searches above the uniform size for the largest size it
+     * fits at on its own. Only worth it when the labels are going to be sized individually.
+     *
+     * @param entries the labels and the space they have to fit in
+     * @param typeface Typeface the labels will be rendered with (may be null)
+     * @param minSize the smallest text size allowed, used when nothing fits
+     * @param maxSize the largest (preferred) text size
+     * @return the largest size of each label (in the same order as the entries) and the shared uniform size
+     */
+    public Result fitEach(List<Entry> entries, Typeface typeface, float minSize, float maxSize) {
+        return fit(entries, typeface, minSize, maxSize, true);
+    }
+
+    private Result fit(final List<Entry> entries, final Typeface typeface,
+                       final float minSize, final float maxSize, final boolean each) {
+        final int count = entries.size();
+        final float[] sizes = new float[count];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger uniform = new AtomicInteger(Float.floatToIntBits(maxSize));
+
+        final Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    sizes[i] = fitEntry(entries.get(i), typeface, check, uniform, minSize, maxSize, each);
+                }
+                return null;
+            }
+        };
+
+        final List<Callable<Void>> workers = new ArrayList<>(threadCount);
+        for (int i = 0; i < Math.min(threadCount, count); i++) {
+            workers.add(worker);
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fitting labels", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to fit labels", e.getCause());
+        }
+        final float uniformSize = Float.intBitsToFloat(uniform.get());
+        if (!each) {
+            Arrays.fill(sizes, uniformSize); // What labels settled for depends on when they were fit
+        }
+        return new Result(sizes, uniformSize);
+    }
+
+    /**
+     * Stops the worker threads. The scaler can't be used afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Fits a single label against the uniform size found so far, lowering it if the label
+     * doesn't fit.
+     *
+     * @param each True to search above the uniform size for the label's own largest size,
+     *             False to settle for the uniform size when the label fits at it
+     * @return the size the label fits at
+     */
+    static float fitEntry(Entry entry, Typeface typeface, FitCheck check, AtomicInteger uniform,
+                          float minSize, float maxSize, boolean each) {
+        if (entry.text.length() == 0) {
+            return each ? maxSize : Float.intBitsToFloat(uniform.get());
+        }
+        final float currentMin = Float.intBitsToFloat(uniform.get());
+        final int currentStep = gridStep(currentMin, minSize, maxSize);
+        if (check.fits(entry, typeface, currentMin)) {
+            if (!each || currentMin >= maxSize) {
+                return currentMin; // Can't lower the uniform size, nothing more to learn
+            }
+            if (check.fits(entry, typeface, maxSize)) {
+                return maxSize;
+            }
+            return search(entry, typeface, check, currentStep, topStep(minSize, maxSize), minSize, maxSize);
+        }
+        final float size = search(entry, typeface, check, 0, currentStep, minSize, maxSize);
+        lowerMin(uniform, size);
+        return size;
+    }
+
+    /**
+     * Same bisection as TextDrawable.searchFit(), through the check and over the grid
+     *
+     * @param fits the step of a size known to fit (or the floor to settle for)
+     * @param tooBig the step of a size known not to fit
+     * @return the largest fitting size on the grid between the two
+     */
+    private static float search(Entry entry, Typeface typeface, FitCheck check, int fits, int tooBig,
+                                float minSize, float maxSize) {
+        while (tooBig - fits > 1) {
+            final int step = (fits + tooBig) >>> 1;
+            if (check.fits(entry, typeface, gridSize(step, minSize, maxSize))) {
+                fits = step;
+            } else {
+                tooBig = step;
+            }
+        }
+        return gridSize(fits, minSize, maxSize);
+    }
+
+    /**
+     * @return The size at a step of the grid, the top step being the max size
+     */
+    private static float gridSize(int step, float minSize, float maxSize) {
+        return Math.min(minSize + step * STEP, maxSize);
+    }
+
+    /**
+     * @param size a size on the grid
+     */
+    private static int gridStep(float size, float minSize, float maxSize) {
+        return size >= maxSize ? topStep(minSize, maxSize) : Math.round((size - minSize) / STEP);
+    }
+
+    private static int topStep(float minSize, float maxSize) {
+        return (int) Math.ceil((maxSize - minSize) / STEP);
+    }
+
+    /**
+     * Positive floats sort the same as their int bits, so the minimum can be kept lock-free.
+     */
+    private static void lowerMin(AtomicInteger uniform, float size) {
+        final int bits = Float.floatToIntBits(size);
+        int current;
+        do {
+            current = uniform.get();
+            if (bits >= current) {
+                return;
+            }
+        } while (!uniform.compareAndSet(current, bits));
+    }
+
+    /**
+     * Checks whether a label fits its space at a given size. Called from every worker thread at
+     * once.
+     */
+    interface FitCheck {
+
+        boolean fits(Entry entry, Typeface typeface, float size);
+    }
+
+    /**
+     * Measures with the real text layout, one paint per worker thread since TextPaint is
+     * anything but thread-safe
+     */
+    private static final class PaintCheck implements FitCheck {
+
+        private final ThreadLocal<TextPaint> paints = new ThreadLocal<TextPaint>() {
+            @Override
+            protected TextPaint initialValue() {
+                return new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            }
+        };
+
+        @Override
+        public boolean fits(Entry entry, Typeface typeface, float size) {
+            final TextPaint paint = paints.get();
+            if (paint.getTypeface() != typeface) {
+                paint.setTypeface(typeface);
+            }
+            return TextDrawable.fitsParent(entry.text, paint, entry.width, entry.height, size);
+        }
+    }
+
+    /**
+     * A label along with the space it has to fit in
+     */
+    public static final class Entry {
+
+        public final String text;
+        public final float width;
+        public final float height;
+
+        public Entry(String text, float width, float height) {
+            this.text = text == null ? "" : text;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Sizes found by fit()
+     */
+    public static final class Result {
+
+        /**
+         * Size each label fits at, in the same order as the entries passed in. Its largest with
+         * fitEach(), the uniform size with fit().
+         */
+        public final float[] sizes;
+
+        /**
+         * Largest size every label fits at
+         */
+        public final float uniformSize;
+
+        Result(float[] sizes, float uniformSize) {
+            this.sizes = sizes;
+            this.uniformSize = uniformSize;
+        }
+    }
+
+}
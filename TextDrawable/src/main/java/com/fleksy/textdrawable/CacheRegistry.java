@@ -0,0 +1,298 @@
+package com.fleksy.textdrawable;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class CacheRegistry implements ComponentCallbacks2 {
+
+    /**
+     * Cheap to rebuild, the first to go when memory gets tight
+     */
+    public static final int PRIORITY_LOW = 0;
+
+    /**
+     * Worth keeping around until memory is actually running low
+     */
+    public static final int PRIORITY_NORMAL = 1;
+
+    /**
+     * Expensive to rebuild or small enough not to matter, only dropped when the app is about to be killed
+     */
+    public static final int PRIORITY_HIGH = 2;
+
+    /**
+     * Name the shadow masks are registered under
+     */
+    public static final String SHADOWS = "shadows";
+
+    /**
+     * Name the font metrics are registered under
+     */
+    public static final String METRICS = "metrics";
+
+    /**
+     * Name the unsaved entries of the open MetricsStore are registered under
+     */
+    public static final String METRICS_STORE = "metrics-store";
+
+    private static CacheRegistry instance;
+
+    private final ArrayList<Entry> entries = new ArrayList<>();
+
+    /**
+     * Use getInstance(), a registry of its own is only good for tests
+     */
+    CacheRegistry() {
+    }
+
+    /**
+     * The registry every cache of the library is registered with. Register it with the
+     * application context (registerComponentCallbacks()) so caches get trimmed when the
+     * system asks for memory back.
+     *
+     * @return the shared registry
+     */
+    public static synchronized CacheRegistry getInstance() {
+        if (instance == null) {
+            instance = new CacheRegistry();
+            instance.register(SHADOWS, PRIORITY_NORMAL, ShadowCache.DEFAULT_MAX_BYTES, ShadowCache.CACHE);
+            instance.register(METRICS, PRIORITY_HIGH, MetricsCache.DEFAULT_MAX_BYTES, MetricsCache.CACHE);
+        }
+        return instance;
+    }
+
+    /**
+     * Starts managing a cache. The cache is held to its budget right away. Apps can register
+     * their own caches to have them trimmed alongside the library's.
+     *
+     * @param name unique name to find the cache by, replaces any cache already registered with it
+     * @param priority one of the PRIORITY_ constants, lower priorities get trimmed first
+     * @param budgetBytes the most memory (bytes) the cache may hold
+     * @param cache the cache to manage
+     */
+    public synchronized void register(String name, int priority, long budgetBytes, Cache cache) {
+        unregister(name);
+        final Entry entry = new Entry(name, priority, cache);
+        int index = 0;
+        while (index < entries.size() && entries.get(index).priority <= priority) {
+            index++;
+        }
+        entries.add(index, entry); // Kept in trim order
+        setBudget(entry, budgetBytes);
+    }
+
+    /**
+     * Stops managing a cache, the cache itself is left as is.
+     *
+     * @param name the name the cache was registered with
+     */
+    public synchronized void unregister(String name) {
+        final Entry entry = find(name);
+        if (entry != null) {
+            entries.remove(entry);
+        }
+    }
+
+    /**
+     * Changes how much memory a cache may hold, trimming it if it's over the new budget.
+     *
+     * @param name the name the cache was registered with
+     * @param budgetBytes the most memory (bytes) the cache may hold
+     * @return True if the cache was found
+     */
+    public synchronized boolean setBudget(String name, long budgetBytes) {
+        final Entry entry = find(name);
+        if (entry != null) {
+            setBudget(entry, budgetBytes);
+        }
+        return entry != null;
+    }
+
+    /**
+     * @return How much memory (bytes) all registered caches hold together
+     */
+    public synchronized long getTotalSize() {
+        long total = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            total += entries.get(i).cache.getSizeBytes();
+        }
+        return total;
+    }
+
+    /**
+     * @return A snapshot of every registered cache, in the order they get trimmed in
+     */
+    public synchronized List<Stats> getStats() {
+        final ArrayList<Stats> stats = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            stats.add(new Stats(entry.name, entry.priority, entry.cache.getSizeBytes(),
+                    entry.budgetBytes, entry.cache.getEvictionCount(), entry.trims, entry.trimmedBytes));
+        }
+        return stats;
+    }
+
+    /**
+     * Trims caches, lowest priority first, according to how badly the system wants memory back.
+     * Each level of pressure halves one more priority and clears the ones below it, so
+     * TRIM_MEMORY_RUNNING_MODERATE only halves the low priority caches while
+     * TRIM_MEMORY_COMPLETE clears everything.
+     *
+     * @param level one of the ComponentCallbacks2 TRIM_MEMORY_ levels
+     */
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        final int pressure = pressureOf(level);
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            if (pressure > entry.priority + 1) {
+                trim(entry, 0);
+            } else if (pressure == entry.priority + 1) {
+                trim(entry, entry.cache.getSizeBytes() / 2);
+            }
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * @return How many priorities are affected by the trim level, from 0 (none) to 4 (all of them, cleared)
+     */
+    static int pressureOf(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            return 4;
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 3;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 2;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private void setBudget(Entry entry, long budgetBytes) {
+        entry.budgetBytes = Math.max(0, budgetBytes);
+        entry.cache.setBudgetBytes(entry.budgetBytes);
+        trim(entry, entry.budgetBytes);
+    }
+
+    private void trim(Entry entry, long bytes) {
+        final long before = entry.cache.getSizeBytes();
+        if (before <= bytes) {
+            return;
+        }
+        entry.cache.trimToBytes(bytes);
+        entry.trims++;
+        entry.trimmedBytes += Math.max(0, before - entry.cache.getSizeBytes());
+    }
+
+    private Entry find(String name) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).name.equals(name)) {
+                return entries.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A cache the registry can measure and trim. Implementations need to be thread safe, the
+     * registry calls them from whatever thread the trim comes in on.
+     */
+    public interface Cache {
+
+        /**
+         * @return How much memory (bytes) the cache currently holds, an estimate is fine
+         */
+        long getSizeBytes();
+
+        /**
+         * @return How many entries the cache has evicted so far, for staying under budget or trims
+         */
+        long getEvictionCount();
+
+        /**
+         * @param bytes the most memory the cache may hold from now on
+         */
+        void setBudgetBytes(long bytes);
+
+        /**
+         * Evicts entries (least recently used first) until the cache holds no more than bytes.
+         * The budget stays the same, the cache is free to grow back.
+         *
+         * @param bytes how much memory the cache may keep
+         */
+        void trimToBytes(long bytes);
+    }
+
+    /**
+     * How full a cache is and how much it's been trimmed
+     */
+    public static final class Stats {
+
+        public final String name;
+        public final int priority;
+        public final long sizeBytes;
+        public final long budgetBytes;
+        public final long evictionCount;
+        public final int trimCount;
+        public final long trimmedBytes;
+
+        Stats(String name, int priority, long sizeBytes, long budgetBytes, long evictionCount,
+              int trimCount, long trimmedBytes) {
+            this.name = name;
+            this.priority = priority;
+            this.sizeBytes = sizeBytes;
+            this.budgetBytes = budgetBytes;
+            this.evictionCount = evictionCount;
+            this.trimCount = trimCount;
+            this.trimmedBytes = trimmedBytes;
+        }
+
+        /**
+         * @return How full the cache is, from 0 to 1
+         */
+        public float getOccupancy() {
+            return budgetBytes <= 0 ? (sizeBytes > 0 ? 1 : 0) : Math.min(1f, (float) sizeBytes / budgetBytes);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + sizeBytes + "/" + budgetBytes + " bytes, " + evictionCount
+                    + " evictions, " + trimCount + " trims (" + trimmedBytes + " bytes)";
+        }
+    }
+
+    private static final class Entry {
+
+        final String name;
+        final int priority;
+        final Cache cache;
+
+        long budgetBytes;
+        int trims;
+        long trimmedBytes;
+
+        Entry(String name, int priority, Cache cache) {
+            this.name = name;
+            this.priority = priority;
+            this.cache = cache;
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.fleksy.textdrawable;
+
+import android.animation.Animator;
+import android.animation.ValueAnimator;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.text.TextPaint;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+abstract class CharacterAnimationDrawable extends AnimationTextDrawable {
+
+    /**
+     * Number of sizes characters snap to while growing/shrinking at reduced quality
+     */
+    private static final int SIZE_STEPS = 8;
+
+    /**
+     * Characters it takes for the stagger to add up to a whole msPerChar
+     */
+    float mostCount = 20;
+    final float msPerChar;
+
+    private final Glyph glyph = new Glyph();
+    private long duration;
+    private float progress;
+
+    /**
+     * The shared render core of the character animations. Positions and widths of every cluster
+     * come from prepareAnimate(), clusters that stay slide into their new spot, unchanged lines
+     * are drawn whole, and everything else is drawn wherever (and however big and faint) the
+     * engine's curves say, in a single frame loop that never measures or allocates. Engines
+     * only provide the curves.
+     *
+     * @param msPerChar how long (ms) a single character takes to animate
+     */
+    CharacterAnimationDrawable(float msPerChar) {
+        super();
+        this.msPerChar = msPerChar;
+    }
+
+    CharacterAnimationDrawable(float msPerChar, TextPaint paint) {
+        super(paint);
+        this.msPerChar = msPerChar;
+    }
+
+    /**
+     * Sets up a cluster of the old text that's going away.
+     *
+     * @param index the old cluster
+     * @param glyph reset to full size and alpha, in place, before every call
+     */
+    protected abstract void outgoing(int index, Glyph glyph);
+
+    /**
+     * Sets up a cluster of the new text that wasn't in the old one.
+     *
+     * @param index the new cluster
+     * @param glyph reset to full size and alpha, in place, before every call
+     */
+    protected abstract void incoming(int index, Glyph glyph);
+
+    /**
+     * @param count number of clusters in the longer of the old and new text, at least 1
+     * @return How long (ms) the whole animation takes
+     */
+    protected long getDuration(int count) {
+        return (long) (msPerChar + msPerChar / mostCount * (count - 1));
+    }
+
+    /**
+     * @return How far (0 - 1) clusters that stay have slid towards their new spot
+     */
+    protected float moveFraction() {
+        return Math.min(1, getPercent() * 2f);
+    }
+
+    /**
+     * @return How far into the animation (ms)
+     */
+    protected final float getPlayTime() {
+        return progress;
+    }
+
+    /**
+     * @return How far through the whole animation (0 - 1)
+     */
+    protected final float getPercent() {
+        return duration <= 0 ? 1 : progress / duration;
+    }
+
+    /**
+     * Each cluster starts a little after the one before it and takes msPerChar to finish.
+     *
+     * @param index the cluster
+     * @return How far through its own animation (0 - 1) the cluster is
+     */
+    protected final float stagger(int index) {
+        final float fraction = (progress - msPerChar * index / mostCount) / msPerChar;
+        return fraction < 0 ? 0 : fraction > 1 ? 1 : fraction;
+    }
+
+    @Override
+    protected Animator animate(CharSequence text, final View parent) {
+        // Outgoing clusters can be staggered too, so the old text's count matters as much
+        duration = getDuration(Math.max(Math.max(animation.count, animation.oldCount), 1));
+        progress = 0;
+
+        final ValueAnimator valueAnimator = new ValueAnimator();
+        valueAnimator.setFloatValues(0, duration);
+        valueAnimator.setDuration(duration);
+        valueAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
+        valueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                setPlayTime(animation.getAnimatedFraction() * duration); // No boxed value per frame
+                parent.invalidate();
+            }
+        });
+        return valueAnimator;
+    }
+
+    /**
+     * Moves the animation to a point in time, which the animator normally takes care of. Lets
+     * benchmarks drive frames off a clock of their own.
+     *
+     * @param time how far into the animation (ms)
+     */
+    void setPlayTime(float time) {
+        progress = Math.max(0, Math.min(time, duration));
+    }
+
+    @Override
+    protected void animatePrepare(CharSequence text) {
+
+    }
+
+    @Override
+    protected final void drawFrame(Canvas canvas) {
+        final AnimationState animation = this.animation;
+        final String text = animation.text;
+        final String old = oldText.toString();
+        final boolean reduced = getQuality() != FrameBudgetMonitor.QUALITY_FULL;
+        final Rect clip = animation.clip;
+        if (reduced && !canvas.getClipBounds(clip)) {
+            return; // Nothing of this frame would make it to the screen
+        }
+        final TextPaint oldPaint = getOldPaint();
+        final float move = moveFraction();
+
+        oldPaint.setTextSize(getTextSize());
+        oldPaint.setAlpha(animation.alpha);
+        drawSettledLines(canvas, oldPaint);
+
+        for (int i = 0; i < animation.oldCount; i++) {
+            final int to = animation.moveTo[i];
+            if (to == -1) {
+                glyph.reset();
+                outgoing(i, glyph);
+                drawGlyph(canvas, reduced, oldPaint, old, animation.oldBounds[i], animation.oldBounds[i + 1],
+                        animation.oldPositions[i], animation.oldBaselines[i], animation.oldGaps[i]);
+            } else if (!animation.settled[to]) { // Settled clusters were drawn with their line
+                final float x = animation.oldPositions[i] + (animation.positions[to] - animation.oldPositions[i]) * move;
+                final float y = animation.oldBaselines[i] + (animation.baselines[to] - animation.oldBaselines[i]) * move;
+                if (!reduced || isVisible(clip, x, y, animation.oldGaps[i])) {
+                    oldPaint.setTextSize(getTextSize());
+                    oldPaint.setAlpha(animation.alpha);
+                    canvas.drawText(old, animation.oldBounds[i], animation.oldBounds[i + 1], x, y, oldPaint);
+                }
+            }
+        }
+        for (int i = 0; i < animation.count; i++) {
+            if (!animation.stay[i]) {
+                glyph.reset();
+                incoming(i, glyph);
+                drawGlyph(canvas, reduced, getPaint(), text, animation.bounds[i], animation.bounds[i + 1],
+                        animation.positions[i], animation.baselines[i], animation.gaps[i]);
+            }
+        }
+        getPaint().setAlpha(animation.alpha); // Skipped characters may have left the paint anywhere
+        getPaint().setTextSize(getTextSize());
+    }
+
+    /**
+     * Draws a cluster the way the glyph describes, centered in its gap, following the level of
+     * detail rules. The width is scaled from the full size advance measured in prepareAnimate()
+     * rather than measured. At reduced quality the size snaps to one of a few steps and
+     * clusters outside the clip aren't drawn at all.
+     */
+    private void drawGlyph(Canvas canvas, boolean reduced, TextPaint paint, String text,
+                           int start, int end, float x, float y, float gap) {
+        float scale = glyph.scale;
+        if (reduced) {
+            scale = Math.round(scale * SIZE_STEPS) / (float) SIZE_STEPS;
+        }
+        final float size = getTextSize() * scale;
+        final int alpha = Math.round(glyph.alpha * animation.alpha / (float) CharacterUtils.MAX_ARGB);
+        final float width = gap * scale;
+        final float left = x + (gap - width) / 2 + glyph.offsetX;
+        final float baseline = y + glyph.offsetY;
+        if (reduced && !isVisible(animation.clip, left, baseline, width)) {
+            return;
+        }
+        final int detail = getLevelOfDetail().detailFor(size, alpha);
+        if (detail == LevelOfDetail.SKIP) {
+            return;
+        }
+        paint.setAlpha(alpha);
+        paint.setTextSize(size);
+        if (detail == LevelOfDetail.PLACEHOLDER) {
+            canvas.drawRect(left, baseline - LevelOfDetail.placeholderHeight(size), left + width, baseline, paint);
+        } else {
+            canvas.drawText(text, start, end, left, baseline, paint);
+        }
+    }
+
+    private boolean isVisible(Rect clip, float x, float y, float width) {
+        return x + width >= clip.left && x <= clip.right
+                && y + getTextSize() >= clip.top && y - getTextSize() <= clip.bottom;
+    }
+
+    /**
+     * How an engine wants a single cluster drawn this frame
+     */
+    protected static final class Glyph {
+
+        /**
+         * Size relative to the text size
+         */
+        public float scale;
+
+        /**
+         * Alpha (0 - 255), on top of the drawable's own alpha
+         */
+        public int alpha;
+
+        /**
+         * Offset (px) from where the cluster sits in the text
+         */
+        public float offsetX, offsetY;
+
+        void reset() {
+            scale = 1;
+            alpha = CharacterUtils.MAX_ARGB;
+            offsetX = 0;
+            offsetY = 0;
+        }
+    }
+
+}
@@ -1,9 +1,6 @@
 package com.fleksy.textdrawable;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.text.BreakIterator;
 
 /**
  * Edited by Fleksy on 2/24/16.
@@ -18,113 +15,217 @@ class CharacterUtils {
     public final static int MAX_ARGB = 255;
 
     /**
-     * Find differences between two Strings and make a list of the CharacterDiffResults
-     * for animations
+     * Below this every char is a cluster of its own (combining marks start at U+0300)
+     */
+    private static final char FIRST_COMBINING = '\u0300';
+
+    private static final ThreadLocal<BreakIterator> breakIterators = new ThreadLocal<BreakIterator>() {
+        @Override
+        protected BreakIterator initialValue() {
+            return BreakIterator.getCharacterInstance();
+        }
+    };
+
+    private static final ThreadLocal<BreakIterator> lineIterators = new ThreadLocal<BreakIterator>() {
+        @Override
+        protected BreakIterator initialValue() {
+            return BreakIterator.getLineInstance();
+        }
+    };
+
+    /**
+     * Finds where text is allowed to wrap, by the same rules a StaticLayout follows (after
+     * spaces and hyphens, between ideographs, never inside a word or a cluster).
      *
-     * @param oldText
-     * @param newText
-     * @return
+     * @param text the text being wrapped
+     * @return this thread's line break iterator, set to the text
      */
-    public static List<CharacterDiffResult> diff(CharSequence oldText, CharSequence newText) {
-
-        List<CharacterDiffResult> differentList = new ArrayList<>();
-        Set<Integer> skip = new HashSet<>();
-
-        for (int i = 0; i < oldText.length(); i++) {
-            char c = oldText.charAt(i);
-            for (int j = 0; j < newText.length(); j++) {
-                if (!skip.contains(j) && c == newText.charAt(j)) {
-                    skip.add(j);
-                    CharacterDiffResult different = new CharacterDiffResult();
-                    different.c = c;
-                    different.fromIndex = i;
-                    different.moveIndex = j;
-                    differentList.add(different);
-                    break;
-                }
+    static BreakIterator lineBreaks(String text) {
+        final BreakIterator iterator = lineIterators.get();
+        iterator.setText(text);
+        return iterator;
+    }
+
+    /**
+     * Splits text into grapheme clusters (what a person would call a character, so an emoji with
+     * all its modifiers, or a letter with its accents, is a single unit). The boundaries are
+     * written into out, starting with 0 and ending with text.length(), so cluster i spans
+     * [out[i], out[i + 1]).
+     *
+     * @param text the text to split
+     * @param out receives the boundaries, must hold at least text.length() + 1 ints
+     * @return the number of clusters found
+     */
+    public static int graphemeBoundaries(CharSequence text, int[] out) {
+        final int length = text.length();
+        out[0] = 0;
+        if (isSimple(text)) {
+            for (int i = 1; i <= length; i++) {
+                out[i] = i;
             }
+            return length;
+        }
+        final BreakIterator iterator = breakIterators.get();
+        iterator.setText(text.toString());
+        int count = 0;
+        for (int end = iterator.next(); end != BreakIterator.DONE; end = iterator.next()) {
+            out[++count] = end;
         }
-        return differentList;
+        return count;
     }
 
     /**
-     * Find the index that needs to get moved from the specified passed index
-     *
-     * @param index
-     * @param differentList
-     * @return
+     * @return True if every char of the text is a cluster of its own, which is most text
      */
-    public static int needMove(int index, List<CharacterDiffResult> differentList) {
-        for (CharacterDiffResult different : differentList) {
-            if (different.fromIndex == index) {
-                return different.moveIndex;
+    private static boolean isSimple(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c >= FIRST_COMBINING || c == '\r') { // CR LF is a single cluster
+                return false;
             }
         }
-        return -1;
+        return true;
     }
 
     /**
-     * Determine whether the character at the specified index needs to remain in place
+     * Find the clusters that are shared between two Strings and fill in the move tables for the
+     * animations. Each old cluster is matched with the first unclaimed new cluster that's the same.
      *
-     * @param index
-     * @param differentList
-     * @return
+     * @param oldText text being animated out of
+     * @param oldBounds cluster boundaries of the old text
+     * @param oldCount number of clusters in the old text
+     * @param newText text being animated into
+     * @param newBounds cluster boundaries of the new text
+     * @param newCount number of clusters in the new text
+     * @param moveTo receives, for every old cluster, the new cluster it moves to or -1 if it goes away
+     * @param stay receives, for every new cluster, True if an old cluster moves into it
+     */
+    public static void diff(CharSequence oldText, int[] oldBounds, int oldCount,
+                            CharSequence newText, int[] newBounds, int newCount,
+                            int[] moveTo, boolean[] stay) {
+        diff(oldText, oldBounds, 0, oldCount, newText, newBounds, 0, newCount, moveTo, stay);
+    }
+
+    /**
+     * Same as diff(), but only between the old clusters [oldFrom, oldTo) and the new clusters
+     * [newFrom, newTo). Table entries outside those ranges are left alone.
      */
-    public static boolean stayHere(int index, List<CharacterDiffResult> differentList) {
-        for (CharacterDiffResult different : differentList) {
-            if (different.moveIndex == index) {
-                return true;
+    public static void diff(CharSequence oldText, int[] oldBounds, int oldFrom, int oldTo,
+                            CharSequence newText, int[] newBounds, int newFrom, int newTo,
+                            int[] moveTo, boolean[] stay) {
+        for (int j = newFrom; j < newTo; j++) {
+            stay[j] = false;
+        }
+        for (int i = oldFrom; i < oldTo; i++) {
+            moveTo[i] = -1;
+            for (int j = newFrom; j < newTo; j++) {
+                if (!stay[j] && sameCluster(oldText, oldBounds[i], oldBounds[i + 1],
+                        newText, newBounds[j], newBounds[j + 1])) {
+                    stay[j] = true;
+                    moveTo[i] = j;
+                    break;
+                }
             }
         }
-        return false;
     }
 
     /**
-     * Find offset needed to move characters for their animation
+     * Line by line version of diff(). Lines at the start and end of both texts that are exactly
+     * the same are matched up cluster for cluster without searching, and only the lines between
+     * them (the ones that actually changed) are diffed. Editing one line of a long text only
+     * costs as much as that line.
      *
-     * @param from
-     * @param move
-     * @param progress
-     * @param startX
-     * @param oldStartX
-     * @param gaps
-     * @param oldGaps
-     * @return
+     * @param oldText text being animated out of
+     * @param oldBounds cluster boundaries of the old text
+     * @param oldLines first cluster of every old line, followed by the old cluster count
+     * @param oldLineCount number of lines in the old text
+     * @param newText text being animated into
+     * @param newBounds cluster boundaries of the new text
+     * @param newLines first cluster of every new line, followed by the new cluster count
+     * @param newLineCount number of lines in the new text
+     * @param moveTo receives, for every old cluster, the new cluster it moves to or -1 if it goes away
+     * @param stay receives, for every new cluster, True if an old cluster moves into it
+     * @param sameLine receives, for every new line, the old line with the exact same text or -1
      */
-    public static float getOffset(int from, int move, float progress, float startX, float oldStartX, float[] gaps, float[] oldGaps) {
-
-        float dist = startX;
-        for (int i = 0; i < move; i++) {
-            dist += gaps[i];
+    public static void diffLines(CharSequence oldText, int[] oldBounds, int[] oldLines, int oldLineCount,
+                                 CharSequence newText, int[] newBounds, int[] newLines, int newLineCount,
+                                 int[] moveTo, boolean[] stay, int[] sameLine) {
+        int first = 0;
+        while (first < oldLineCount && first < newLineCount
+                && sameLine(oldText, oldBounds, oldLines, first, newText, newBounds, newLines, first)) {
+            first++;
+        }
+        int last = 0;
+        while (last < oldLineCount - first && last < newLineCount - first
+                && sameLine(oldText, oldBounds, oldLines, oldLineCount - 1 - last,
+                newText, newBounds, newLines, newLineCount - 1 - last)) {
+            last++;
         }
 
-        float cur = oldStartX;
-        for (int i = 0; i < from; i++) {
-            cur += oldGaps[i];
+        for (int line = 0; line < newLineCount; line++) {
+            if (line < first) {
+                match(oldLines, line, newLines, line, moveTo, stay);
+                sameLine[line] = line;
+            } else if (line >= newLineCount - last) {
+                final int oldLine = line - newLineCount + oldLineCount;
+                match(oldLines, oldLine, newLines, line, moveTo, stay);
+                sameLine[line] = oldLine;
+            } else {
+                sameLine[line] = -1;
+            }
         }
+        diff(oldText, oldBounds, oldLines[first], oldLines[oldLineCount - last],
+                newText, newBounds, newLines[first], newLines[newLineCount - last], moveTo, stay);
+    }
+
+    private static boolean sameLine(CharSequence a, int[] aBounds, int[] aLines, int aLine,
+                                    CharSequence b, int[] bBounds, int[] bLines, int bLine) {
+        return aLines[aLine + 1] - aLines[aLine] == bLines[bLine + 1] - bLines[bLine]
+                && sameCluster(a, aBounds[aLines[aLine]], aBounds[aLines[aLine + 1]],
+                b, bBounds[bLines[bLine]], bBounds[bLines[bLine + 1]]);
+    }
 
-        return cur + (dist - cur) * progress;
+    private static void match(int[] oldLines, int oldLine, int[] newLines, int newLine,
+                              int[] moveTo, boolean[] stay) {
+        final int offset = newLines[newLine] - oldLines[oldLine];
+        for (int i = oldLines[oldLine]; i < oldLines[oldLine + 1]; i++) {
+            moveTo[i] = i + offset;
+            stay[i + offset] = true;
+        }
+    }
 
+    private static boolean sameCluster(CharSequence a, int aStart, int aEnd,
+                                       CharSequence b, int bStart, int bEnd) {
+        if (aEnd - aStart != bEnd - bStart) {
+            return false;
+        }
+        for (int i = 0; i < aEnd - aStart; i++) {
+            if (a.charAt(aStart + i) != b.charAt(bStart + i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * Realign text to match language preferences
+     * Realign text to match language preferences. RTL text is reversed cluster by cluster so
+     * surrogate pairs and combining marks stay in one piece.
      *
      * @param alignMe
      * @param rtlLanguage
      * @return
      */
     public static String getAlignedText(String alignMe, boolean rtlLanguage) {
-        return rtlLanguage ? new StringBuilder(alignMe).reverse().toString() : alignMe;
-    }
-
-    /**
-     * Character, the original index it was located, and the index it will move to
-     */
-    public static class CharacterDiffResult {
-        public char c;
-        public int fromIndex;
-        public int moveIndex;
+        if (!rtlLanguage) {
+            return alignMe;
+        }
+        final int[] bounds = new int[alignMe.length() + 1];
+        final int count = graphemeBoundaries(alignMe, bounds);
+        final StringBuilder aligned = new StringBuilder(alignMe.length());
+        for (int i = count - 1; i >= 0; i--) {
+            aligned.append(alignMe, bounds[i], bounds[i + 1]);
+        }
+        return aligned.toString();
     }
 
 }
@@ -0,0 +1,256 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Rect;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class DrawableRegistry<T extends BaseDrawable> {
+
+    /**
+     * Default size (px) of a grid cell, about the size of a key
+     */
+    public static final int DEFAULT_CELL_SIZE = 96;
+
+    private final int cellSize;
+    private final LongSparseArray<ArrayList<Entry>> cells = new LongSparseArray<>();
+    private final Comparator<T> drawOrder = new Comparator<T>() {
+        @Override
+        public int compare(T a, T b) {
+            return a.registryEntry.order - b.registryEntry.order;
+        }
+    };
+
+    private int size = 0;
+    private int nextOrder = 0;
+    private int queryStamp = 0;
+
+    public DrawableRegistry() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Keeps a uniform grid over the bounds of many drawables so finding the ones under a finger
+     * (or inside a dirty rect) only looks at the drawables in the cells touched, instead of
+     * calling contains() on every single one. The grid follows the drawables on its own as
+     * their bounds change.
+     *
+     * @param cellSize size (px) of each grid cell, somewhere around the size of a drawable works best
+     */
+    public DrawableRegistry(int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+    }
+
+    /**
+     * Starts tracking a drawable. Drawables added later are considered on top of earlier ones.
+     * A drawable can only be in one registry at a time.
+     *
+     * @param drawable the drawable to track
+     */
+    public void add(T drawable) {
+        if (drawable.registryEntry != null) {
+            throw new IllegalStateException("Drawable is already in a registry");
+        }
+        final Entry entry = new Entry(this, drawable, nextOrder++);
+        drawable.registryEntry = entry;
+        index(entry, drawable.getCurrentBounds());
+        size++;
+    }
+
+    /**
+     * Stops tracking a drawable.
+     *
+     * @param drawable the drawable to forget
+     */
+    public void remove(T drawable) {
+        final Entry entry = drawable.registryEntry;
+        if (entry == null || entry.registry != this) {
+            return;
+        }
+        unindex(entry);
+        drawable.registryEntry = null;
+        size--;
+    }
+
+    /**
+     * @return How many drawables are being tracked
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return The top-most shown drawable containing the point, or null if there isn't one
+     */
+    public T findAt(float x, float y) {
+        return findAt(x, y, false, 0);
+    }
+
+    /**
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param id only drawables with this ID are considered
+     * @return The top-most shown drawable with the ID containing the point, or null if there isn't one
+     */
+    public T findAt(float x, float y, int id) {
+        return findAt(x, y, true, id);
+    }
+
+    /**
+     * Collects every shown drawable whose bounds intersect the rect, in the order they were
+     * added (which is the order to draw them in). Great for redrawing just a dirty region.
+     *
+     * @param rect the region to search
+     * @param out receives the drawables found, it isn't cleared first
+     * @return the out list for convenience
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> query(Rect rect, List<T> out) {
+        if (rect.left >= rect.right || rect.top >= rect.bottom) {
+            return out;
+        }
+        final int stamp = ++queryStamp;
+        final int first = out.size();
+        for (int cy = cell(rect.top); cy <= cell(rect.bottom - 1); cy++) {
+            for (int cx = cell(rect.left); cx <= cell(rect.right - 1); cx++) {
+                final ArrayList<Entry> bucket = cells.get(key(cx, cy));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size(); i++) {
+                    final Entry entry = bucket.get(i);
+                    if (entry.stamp == stamp) {
+                        continue; // Already seen in another cell
+                    }
+                    entry.stamp = stamp;
+                    final Rect bounds = entry.drawable.getCurrentBounds();
+                    if (entry.drawable.isShown() && Rect.intersects(bounds, rect)) {
+                        out.add((T) entry.drawable);
+                    }
+                }
+            }
+        }
+        if (out.size() - first > 1) {
+            Collections.sort(out.subList(first, out.size()), drawOrder);
+        }
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T findAt(float x, float y, boolean matchId, int id) {
+        final ArrayList<Entry> bucket = cells.get(key(cell(x), cell(y)));
+        if (bucket == null) {
+            return null;
+        }
+        Entry top = null;
+        for (int i = 0; i < bucket.size(); i++) {
+            final Entry entry = bucket.get(i);
+            final BaseDrawable drawable = entry.drawable;
+            if ((top == null || entry.order > top.order) && (!matchId || drawable.getId() == id)
+                    && drawable.isShown() && drawable.contains(x, y)) {
+                top = entry;
+            }
+        }
+        return top == null ? null : (T) top.drawable;
+    }
+
+    /**
+     * Called by the drawable after its bounds change.
+     */
+    void onBoundsChanged(Entry entry, Rect bounds) {
+        if (bounds.left >= bounds.right || bounds.top >= bounds.bottom) {
+            unindex(entry);
+            return;
+        }
+        final int left = cell(bounds.left);
+        final int top = cell(bounds.top);
+        final int right = cell(bounds.right - 1);
+        final int bottom = cell(bounds.bottom - 1);
+        if (entry.indexed && left == entry.left && top == entry.top
+                && right == entry.right && bottom == entry.bottom) {
+            return; // Still covers the same cells
+        }
+        unindex(entry);
+        index(entry, bounds);
+    }
+
+    private void index(Entry entry, Rect bounds) {
+        if (bounds.left >= bounds.right || bounds.top >= bounds.bottom) {
+            return;
+        }
+        entry.left = cell(bounds.left);
+        entry.top = cell(bounds.top);
+        entry.right = cell(bounds.right - 1);
+        entry.bottom = cell(bounds.bottom - 1);
+        for (int cy = entry.top; cy <= entry.bottom; cy++) {
+            for (int cx = entry.left; cx <= entry.right; cx++) {
+                final long key = key(cx, cy);
+                ArrayList<Entry> bucket = cells.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(4);
+                    cells.put(key, bucket);
+                }
+                bucket.add(entry);
+            }
+        }
+        entry.indexed = true;
+    }
+
+    private void unindex(Entry entry) {
+        if (!entry.indexed) {
+            return;
+        }
+        for (int cy = entry.top; cy <= entry.bottom; cy++) {
+            for (int cx = entry.left; cx <= entry.right; cx++) {
+                final long key = key(cx, cy);
+                final ArrayList<Entry> bucket = cells.get(key);
+                if (bucket != null) {
+                    bucket.remove(entry);
+                    if (bucket.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+        entry.indexed = false;
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * Where a drawable sits in the grid, kept on the drawable itself so bounds changes don't
+     * need a lookup
+     */
+    static final class Entry {
+
+        final DrawableRegistry<?> registry;
+        final BaseDrawable drawable;
+        final int order;
+
+        boolean indexed;
+        int left, top, right, bottom;
+        int stamp;
+
+        Entry(DrawableRegistry<?> registry, BaseDrawable drawable, int order) {
+            this.registry = registry;
+            this.drawable = drawable;
+            this.order = order;
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class EvaporateTextDrawable extends CharacterAnimationDrawable {
+
+    /**
+     * Characters that go away rise and shrink as they fade out, one after another, while the
+     * new ones rise into place from below.
+     *
+     * @param msPerChar how long (ms) a single character takes to evaporate
+     */
+    public EvaporateTextDrawable(float msPerChar) {
+        super(msPerChar);
+    }
+
+    EvaporateTextDrawable(float msPerChar, TextPaint paint) {
+        super(msPerChar, paint);
+    }
+
+    @Override
+    protected void outgoing(int index, Glyph glyph) {
+        final float fraction = stagger(index);
+        glyph.alpha = (int) ((1 - fraction) * CharacterUtils.MAX_ARGB);
+        glyph.scale = 1 - fraction / 2;
+        glyph.offsetY = -getTextSize() * fraction / 2;
+    }
+
+    @Override
+    protected void incoming(int index, Glyph glyph) {
+        final float fraction = stagger(index);
+        glyph.alpha = (int) (CharacterUtils.MAX_ARGB * fraction);
+        glyph.offsetY = getTextSize() * (1 - fraction) / 2;
+    }
+
+}
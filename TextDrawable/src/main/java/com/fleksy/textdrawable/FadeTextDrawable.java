@@ -0,0 +1,34 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class FadeTextDrawable extends CharacterAnimationDrawable {
+
+    /**
+     * Characters that go away fade out together while the new ones fade in one after another.
+     *
+     * @param msPerChar how long (ms) a single character takes to fade in
+     */
+    public FadeTextDrawable(float msPerChar) {
+        super(msPerChar);
+    }
+
+    FadeTextDrawable(float msPerChar, TextPaint paint) {
+        super(msPerChar, paint);
+    }
+
+    @Override
+    protected void outgoing(int index, Glyph glyph) {
+        glyph.alpha = (int) ((1 - getPercent()) * CharacterUtils.MAX_ARGB);
+    }
+
+    @Override
+    protected void incoming(int index, Glyph glyph) {
+        glyph.alpha = (int) (CharacterUtils.MAX_ARGB * stagger(index));
+    }
+
+}
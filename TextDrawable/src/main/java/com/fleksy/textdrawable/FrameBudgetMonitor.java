@@ -0,0 +1,159 @@
+package com.fleksy.textdrawable;
+
+import android.view.Choreographer;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class FrameBudgetMonitor implements Choreographer.FrameCallback {
+
+    /**
+     * Every character animated every frame
+     */
+    public static final int QUALITY_FULL = 0;
+
+    /**
+     * Characters outside the canvas clip are skipped, and characters growing or shrinking snap
+     * to a few sizes, so the font engine has fewer glyph sizes to rasterize
+     */
+    public static final int QUALITY_REDUCED = 1;
+
+    /**
+     * Animations jump straight to their final frame
+     */
+    public static final int QUALITY_MINIMAL = 2;
+
+    /**
+     * Default time (ms) all animated drawables get to share per frame
+     */
+    public static final float DEFAULT_BUDGET_MS = 4;
+
+    /**
+     * Consecutive frames over budget before quality drops a level
+     */
+    private static final int DEGRADE_FRAMES = 2;
+
+    /**
+     * Consecutive frames with plenty of headroom before quality comes back up a level. Frames
+     * nothing animated in count too, so it's about half a second once animations stop.
+     */
+    private static final int RESTORE_FRAMES = 30;
+
+    private final long budgetNanos;
+    private OnQualityChangeListener listener;
+
+    private int quality = QUALITY_FULL;
+    private long frameCost = 0;
+    private boolean frameScheduled = false;
+    private int overBudgetFrames = 0;
+    private int underBudgetFrames = 0;
+
+    public FrameBudgetMonitor() {
+        this(DEFAULT_BUDGET_MS);
+    }
+
+    /**
+     * Keeps track of how long animated drawables take to draw each frame and lowers their
+     * quality when they go over budget, then brings it back once there's room again. Share one
+     * monitor between every drawable animating in the same window, as it's their combined cost
+     * that matters. Only use it from the UI thread.
+     *
+     * @param budgetMs time (ms) the animated drawables get to share per frame
+     */
+    public FrameBudgetMonitor(float budgetMs) {
+        this.budgetNanos = (long) (budgetMs * 1000000);
+    }
+
+    /**
+     * @param listener notified every time the quality changes, may be null
+     */
+    public void setOnQualityChangeListener(OnQualityChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return The current quality, one of QUALITY_FULL, QUALITY_REDUCED, or QUALITY_MINIMAL
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Adds the time a drawable spent drawing to the current frame.
+     *
+     * @param nanos how long the draw took
+     */
+    void addCost(long nanos) {
+        frameCost += nanos;
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * @return True if the monitor is waiting on the next frame
+     */
+    boolean isFrameScheduled() {
+        return frameScheduled;
+    }
+
+    /**
+     * Runs at the start of the next frame, by which point every draw of the last one is in.
+     * While quality is down it keeps running every frame, whether anything animated or not, as
+     * idle frames are headroom too. Otherwise quality could only come back up during animations,
+     * most of which end long before enough frames go by.
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        final long cost = frameCost;
+        frameCost = 0;
+
+        if (cost > budgetNanos) {
+            underBudgetFrames = 0;
+            if (++overBudgetFrames >= DEGRADE_FRAMES && quality < QUALITY_MINIMAL) {
+                overBudgetFrames = 0;
+                setQuality(quality + 1);
+            }
+        } else if (cost < budgetNanos / 2) {
+            overBudgetFrames = 0;
+            if (++underBudgetFrames >= RESTORE_FRAMES && quality > QUALITY_FULL) {
+                underBudgetFrames = 0;
+                setQuality(quality - 1);
+            }
+        } else {
+            overBudgetFrames = 0;
+            underBudgetFrames = 0;
+        }
+        if (quality > QUALITY_FULL) {
+            scheduleFrame();
+        }
+    }
+
+    private void setQuality(int quality) {
+        final int oldQuality = this.quality;
+        this.quality = quality;
+        if (listener != null) {
+            listener.onQualityChanged(oldQuality, quality);
+        }
+    }
+
+    /**
+     * Callback for when animation quality changes
+     */
+    public interface OnQualityChangeListener {
+
+        /**
+         * @param oldQuality the quality before the change
+         * @param newQuality the quality animations will be drawn at from now on
+         */
+        void onQualityChanged(int oldQuality, int newQuality);
+    }
+
+}
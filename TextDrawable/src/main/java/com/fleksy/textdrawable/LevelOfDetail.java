@@ -0,0 +1,95 @@
+package com.fleksy.textdrawable;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class LevelOfDetail {
+
+    /**
+     * Draw the glyph like normal
+     */
+    static final int FULL = 0;
+
+    /**
+     * Draw a plain rect where the glyph would go
+     */
+    static final int PLACEHOLDER = 1;
+
+    /**
+     * Don't draw anything, the glyph wouldn't be visible anyway
+     */
+    static final int SKIP = 2;
+
+    /**
+     * Skips glyphs under a pixel tall or fully transparent, never draws placeholders
+     */
+    public static final LevelOfDetail DEFAULT = new LevelOfDetail(1, 1, 0);
+
+    /**
+     * Draws every glyph no matter how small or faint
+     */
+    public static final LevelOfDetail NONE = new LevelOfDetail(0, 0, 0);
+
+    private final float minSize;
+    private final int minAlpha;
+    private final float placeholderSize;
+
+    /**
+     * Rules for when glyphs are too small or faint to be worth a real draw call. Glyphs drawn
+     * below minSize or minAlpha are skipped, and glyphs between minSize and placeholderSize
+     * are drawn as a rect, which at a few pixels tall looks about the same for a fraction of
+     * the cost.
+     *
+     * @param minSize text size (px) below which glyphs aren't drawn
+     * @param minAlpha alpha (0 - 255) below which glyphs aren't drawn
+     * @param placeholderSize text size (px) below which glyphs are drawn as rects, anything
+     *                        at or below minSize turns placeholders off
+     */
+    public LevelOfDetail(float minSize, int minAlpha, float placeholderSize) {
+        this.minSize = Math.max(0, minSize);
+        this.minAlpha = Math.max(0, Math.min(CharacterUtils.MAX_ARGB, minAlpha));
+        this.placeholderSize = placeholderSize;
+    }
+
+    /**
+     * @return Text size (px) below which glyphs aren't drawn
+     */
+    public float getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @return Alpha below which glyphs aren't drawn
+     */
+    public int getMinAlpha() {
+        return minAlpha;
+    }
+
+    /**
+     * @return Text size (px) below which glyphs are drawn as rects
+     */
+    public float getPlaceholderSize() {
+        return placeholderSize;
+    }
+
+    /**
+     * @param size the size (px) the glyph will be drawn at
+     * @param alpha the alpha the glyph will be drawn with
+     * @return How to draw the glyph, one of FULL, PLACEHOLDER, or SKIP
+     */
+    int detailFor(float size, int alpha) {
+        if (size < minSize || size <= 0 || alpha < minAlpha || alpha <= 0) {
+            return SKIP;
+        }
+        return size < placeholderSize ? PLACEHOLDER : FULL;
+    }
+
+    /**
+     * @return Height (px) of the placeholder drawn for a glyph of the size, about its x-height
+     */
+    static float placeholderHeight(float size) {
+        return size / 2;
+    }
+
+}
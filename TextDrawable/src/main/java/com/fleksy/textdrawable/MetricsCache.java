@@ -0,0 +1,381 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.TextPaint;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+final class MetricsCache {
+
+    /**
+     * Plenty for a keyboard's worth of typefaces and sizes
+     */
+    private static final int MAX_FONTS = 48;
+
+    /**
+     * Default budget for all cached metrics, which are estimates as fonts grow while they're used
+     */
+    static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    /**
+     * Paint flags that change the measured advances, glyphs are positioned differently with them
+     */
+    static final int MEASURE_FLAGS = Paint.SUBPIXEL_TEXT_FLAG | Paint.LINEAR_TEXT_FLAG;
+
+    /**
+     * Access ordered, so it iterates from the least recently used font. Trimming by bytes walks
+     * it in that order, which an LruCache can only do through a copy from snapshot().
+     */
+    private static final LinkedHashMap<Key, Font> fonts = new LinkedHashMap<Key, Font>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Font> eldest) {
+            if (size() > MAX_FONTS) {
+                evictedFonts++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private static final Key probe = new Key();
+
+    private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+    private static int evictedFonts;
+
+    /**
+     * Lets the CacheRegistry measure and trim the metrics
+     */
+    static final CacheRegistry.Cache CACHE = new CacheRegistry.Cache() {
+        @Override
+        public long getSizeBytes() {
+            return sizeBytes();
+        }
+
+        @Override
+        public long getEvictionCount() {
+            synchronized (probe) {
+                return evictedFonts;
+            }
+        }
+
+        @Override
+        public void setBudgetBytes(long bytes) {
+            maxBytes = bytes;
+        }
+
+        @Override
+        public void trimToBytes(long bytes) {
+            trim(bytes);
+        }
+    };
+
+    /**
+     * Rough sizes (bytes) for estimating how much memory a font takes up: the font itself, every
+     * slot of the char table (char + float + boolean), and every longer run (map entry, String,
+     * and Float, plus the chars)
+     */
+    private static final int FONT_BYTES = 96;
+    private static final int CHAR_SLOT_BYTES = 7;
+    private static final int ADVANCE_BYTES = 96;
+
+    private static ExecutorService executor;
+
+    private MetricsCache() {
+    }
+
+    /**
+     * Finds (or creates) the cached metrics for a typeface at a size.
+     *
+     * @param typeface the typeface being measured, null for the default
+     * @param size the text size being measured
+     * @param bold True if the paint fakes bold text
+     * @param scaleX the paint's horizontal text scale
+     * @param letterSpacing the paint's letter spacing (always 0 before API 21)
+     * @param flags the paint's flags, only the MEASURE_FLAGS count
+     * @return the metrics entry, shared by everything drawing with the same font
+     */
+    static Font font(Typeface typeface, float size, boolean bold, float scaleX, float letterSpacing,
+                     int flags) {
+        synchronized (probe) {
+            probe.set(typeface, size, bold, scaleX, letterSpacing, flags);
+            Font font = fonts.get(probe);
+            if (font == null) {
+                final Key key = new Key();
+                key.set(typeface, size, bold, scaleX, letterSpacing, flags);
+                font = new Font();
+                fonts.put(key, font);
+                if (sizeBytes() > maxBytes) { // Fonts grow as they're used, so check on every new one
+                    trim(maxBytes);
+                }
+            }
+            return font;
+        }
+    }
+
+    private static long sizeBytes() {
+        synchronized (probe) {
+            long size = 0;
+            for (Font font : fonts.values()) {
+                size += font.sizeBytes();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Drops the least recently used fonts until the estimated size is down to bytes.
+     */
+    private static void trim(long bytes) {
+        synchronized (probe) {
+            long size = sizeBytes();
+            final Iterator<Font> iterator = fonts.values().iterator();
+            while (size > bytes && iterator.hasNext()) {
+                size -= iterator.next().sizeBytes();
+                iterator.remove();
+                evictedFonts++;
+            }
+        }
+    }
+
+    /**
+     * @return The metrics entry matching everything about the paint that changes how text
+     * measures: typeface, size, boldness, horizontal scale, letter spacing, and the subpixel and
+     * linear text flags
+     */
+    static Font font(TextPaint paint) {
+        return font(paint.getTypeface(), paint.getTextSize(), paint.isFakeBoldText(),
+                paint.getTextScaleX(), letterSpacing(paint), paint.getFlags());
+    }
+
+    /**
+     * @return The paint's letter spacing, always 0 before API 21
+     */
+    static float letterSpacing(Paint paint) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? paint.getLetterSpacing() : 0;
+    }
+
+    /**
+     * Measures the font metrics and the advance of every grapheme cluster of the charset on a
+     * background thread, filling the native font caches and ours. Everything is measured with a
+     * copy of the paint, so its boldness, scale, and spacing carry over.
+     *
+     * @throws IllegalArgumentException if sizes is null, or holds a size that isn't positive
+     */
+    static Future<?> prewarm(TextPaint style, float[] sizes, CharSequence charset) {
+        if (sizes == null) {
+            throw new IllegalArgumentException("No sizes to prewarm");
+        }
+        for (float size : sizes) {
+            if (!(size > 0)) {
+                throw new IllegalArgumentException("Can't prewarm text size " + size);
+            }
+        }
+        final TextPaint paint = new TextPaint(style); // Copied now, the caller may change theirs
+        final float[] warmSizes = sizes.clone();
+        final String chars = charset == null ? "" : charset.toString();
+        return executor().submit(new Runnable() {
+            @Override
+            public void run() {
+                final Rect bounds = new Rect();
+                final int[] clusters = new int[chars.length() + 1];
+                final int count = CharacterUtils.graphemeBoundaries(chars, clusters);
+                for (float size : warmSizes) {
+                    paint.setTextSize(size);
+                    final Font font = font(paint);
+                    font.ascentMinusDescent(paint);
+                    for (int i = 0; i < count; i++) {
+                        font.advance(paint, chars, clusters[i], clusters[i + 1]);
+                    }
+                    if (chars.length() > 0) {
+                        paint.getTextBounds(chars, 0, chars.length(), bounds); // Warms the glyph bounds too
+                    }
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "TextDrawable-prewarm");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Metrics for one typeface at one size. Every method takes the paint to measure with on a
+     * miss, which has to already be set up with this font.
+     */
+    static final class Font {
+
+        private boolean hasMetrics;
+        private float ascentMinusDescent;
+
+        /**
+         * Single characters, open addressed on the char itself
+         */
+        private char[] charKeys = new char[32];
+        private float[] charAdvances = new float[32];
+        private boolean[] charUsed = new boolean[32];
+        private int charCount;
+
+        /**
+         * Anything longer than a char (surrogate pairs, clusters, whole words)
+         */
+        private final HashMap<String, Float> advances = new HashMap<>();
+        private long advanceBytes;
+
+        /**
+         * @return Rough estimate of how much memory (bytes) this font's metrics take up
+         */
+        synchronized long sizeBytes() {
+            return FONT_BYTES + charKeys.length * CHAR_SLOT_BYTES + advanceBytes;
+        }
+
+        /**
+         * @return paint.ascent() - paint.descent() for this font
+         */
+        float ascentMinusDescent(TextPaint paint) {
+            synchronized (this) {
+                if (hasMetrics) {
+                    return ascentMinusDescent;
+                }
+            }
+            final float value = paint.ascent() - paint.descent();
+            synchronized (this) {
+                ascentMinusDescent = value;
+                hasMetrics = true;
+            }
+            return value;
+        }
+
+        /**
+         * @return The advance width of text[start, end) for this font
+         */
+        float advance(TextPaint paint, CharSequence text, int start, int end) {
+            if (end - start == 1) {
+                final char c = text.charAt(start);
+                synchronized (this) {
+                    final int slot = slot(c);
+                    if (charUsed[slot]) {
+                        return charAdvances[slot];
+                    }
+                }
+                final float advance = paint.measureText(text, start, end);
+                synchronized (this) {
+                    putChar(c, advance);
+                }
+                return advance;
+            }
+            final String key = text.subSequence(start, end).toString();
+            synchronized (this) {
+                final Float advance = advances.get(key);
+                if (advance != null) {
+                    return advance;
+                }
+            }
+            final float advance = paint.measureText(key);
+            synchronized (this) {
+                if (advances.put(key, advance) == null) {
+                    advanceBytes += ADVANCE_BYTES + key.length() * 2;
+                }
+            }
+            return advance;
+        }
+
+        private int slot(char c) {
+            final int mask = charKeys.length - 1;
+            int slot = (c * 0x9E37) & mask;
+            while (charUsed[slot] && charKeys[slot] != c) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void putChar(char c, float advance) {
+            if ((charCount + 1) * 2 > charKeys.length) {
+                final char[] keys = charKeys;
+                final float[] values = charAdvances;
+                final boolean[] used = charUsed;
+                charKeys = new char[keys.length * 2];
+                charAdvances = new float[keys.length * 2];
+                charUsed = new boolean[keys.length * 2];
+                charCount = 0;
+                for (int i = 0; i < keys.length; i++) {
+                    if (used[i]) {
+                        putChar(keys[i], values[i]);
+                    }
+                }
+            }
+            final int slot = slot(c);
+            if (!charUsed[slot]) {
+                charUsed[slot] = true;
+                charKeys[slot] = c;
+                charCount++;
+            }
+            charAdvances[slot] = advance;
+        }
+    }
+
+    private static final class Key {
+
+        Typeface typeface;
+        float size;
+        boolean bold;
+        float scaleX;
+        float letterSpacing;
+        int flags;
+
+        void set(Typeface typeface, float size, boolean bold, float scaleX, float letterSpacing,
+                 int flags) {
+            this.typeface = typeface;
+            this.size = size;
+            this.bold = bold;
+            this.scaleX = scaleX;
+            this.letterSpacing = letterSpacing;
+            this.flags = flags & MEASURE_FLAGS;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return typeface == other.typeface && size == other.size && bold == other.bold
+                    && scaleX == other.scaleX && letterSpacing == other.letterSpacing
+                    && flags == other.flags;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = typeface == null ? 0 : System.identityHashCode(typeface);
+            hash = 31 * hash + Float.floatToIntBits(size);
+            hash = 31 * hash + (bold ? 1 : 0);
+            hash = 31 * hash + Float.floatToIntBits(scaleX);
+            hash = 31 * hash + Float.floatToIntBits(letterSpacing);
+            return 31 * hash + flags;
+        }
+    }
+
+}
@@ -0,0 +1,426 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class MetricsStore {
+
+    private static final String TAG = "MetricsStore";
+
+    private static final int MAGIC = 0x54444d53; // "TDMS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4; // magic, format, library version, count
+    private static final int RECORD_SIZE = 8 + 8 + 4 + 4 + 4; // font, key, a, b, c
+
+    /**
+     * Default budget for entries measured this run and not saved yet
+     */
+    static final int DEFAULT_MAX_PENDING_BYTES = 64 * 1024;
+
+    /**
+     * Rough size (bytes) of an unsaved entry: the map entry, the boxed key, and the int[5]
+     */
+    private static final int PENDING_BYTES = 32 + 16 + 40;
+
+    private static final int KIND_BOUNDS = 1;
+    private static final int KIND_FIT = 2;
+
+    /**
+     * Glyphs that look different in just about every font, used to fingerprint a typeface
+     */
+    private static final String PROBE = "Hamburgefonstiv HAMBURGEFONSTIV 0123456789 @&%?!gjpqy";
+
+    private final File file;
+    private final long libraryVersion;
+
+    /**
+     * Held through a whole save(), so two saves never write the file at once. Lookups only
+     * wait on the store itself, which is never held while writing.
+     */
+    private final Object saveLock = new Object();
+
+    private MappedByteBuffer mapped;
+    private int mappedCount;
+
+    /**
+     * Unsaved entries, oldest first. Dropping one only means measuring it again next run.
+     */
+    private final LinkedHashMap<Long, int[]> pending = new LinkedHashMap<>();
+    private long maxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+    private long droppedEntries;
+    private final Set<Long> usedFonts = new HashSet<>();
+    private final WeakHashMap<Typeface, Long> fingerprints = new WeakHashMap<>();
+    private final TextPaint probePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+    /**
+     * Lets the CacheRegistry measure and trim the unsaved entries
+     */
+    final CacheRegistry.Cache cache = new CacheRegistry.Cache() {
+        @Override
+        public long getSizeBytes() {
+            synchronized (MetricsStore.this) {
+                return pending.size() * (long) PENDING_BYTES;
+            }
+        }
+
+        @Override
+        public long getEvictionCount() {
+            synchronized (MetricsStore.this) {
+                return droppedEntries;
+            }
+        }
+
+        @Override
+        public void setBudgetBytes(long bytes) {
+            synchronized (MetricsStore.this) {
+                maxPendingBytes = bytes;
+            }
+        }
+
+        @Override
+        public void trimToBytes(long bytes) {
+            trimPending(bytes);
+        }
+    };
+
+    private MetricsStore(File file, String libraryVersion) {
+        this.file = file;
+        this.libraryVersion = hash(hash(FNV_OFFSET, FORMAT_VERSION), libraryVersion);
+    }
+
+    /**
+     * Opens (or starts) a store of precomputed text metrics backed by the given file. Whatever
+     * was saved by a previous run is memory-mapped and read straight from disk, so opening is
+     * cheap no matter how big the store is. A file written by a different library version is
+     * ignored and replaced on the next save().
+     *
+     * Install it with TextDrawable.setMetricsStore() so defaultBounds() and autoScaleText()
+     * check it before measuring anything. Entries measured until the next save() are held in
+     * memory under the CacheRegistry.METRICS_STORE budget, replacing any store opened before.
+     *
+     * @param file where the store lives, something like new File(context.getCacheDir(), "text.metrics")
+     * @return the opened store, empty if the file was missing, stale, or unreadable
+     */
+    public static MetricsStore open(File file) {
+        final MetricsStore store = open(file, BuildConfig.LIBRARY_VERSION);
+        CacheRegistry.getInstance().register(CacheRegistry.METRICS_STORE, CacheRegistry.PRIORITY_LOW,
+                DEFAULT_MAX_PENDING_BYTES, store.cache);
+        return store;
+    }
+
+    /**
+     * Opens a store without registering it, for tests
+     *
+     * @param libraryVersion files written by any other version are ignored
+     */
+    static MetricsStore open(File file, String libraryVersion) {
+        final MetricsStore store = new MetricsStore(file, libraryVersion);
+        store.map();
+        return store;
+    }
+
+    /**
+     * @return How many entries the store currently holds (saved and unsaved)
+     */
+    public synchronized int size() {
+        return mappedCount + pending.size();
+    }
+
+    /**
+     * Writes everything measured this run to disk and maps the new file. Entries for fonts that
+     * weren't used since the store was opened are dropped, so a typeface change invalidates the
+     * old font's metrics on its own. Do this off the UI thread (onPause or onTrimMemory works).
+     * The records are copied out first and written without holding the store, so lookups on
+     * the UI thread never wait on the disk, and whatever they measure meanwhile is kept for the
+     * next save.
+     *
+     * @return True if the store was written, False if there was nothing new or writing failed
+     */
+    public boolean save() {
+        synchronized (saveLock) {
+            final Map<Long, int[]> saving = new LinkedHashMap<>();
+            final byte[] records = snapshot(saving);
+            if (records == null) {
+                return false;
+            }
+            final File temp = new File(file.getPath() + ".tmp");
+            RandomAccessFile out = null;
+            try {
+                out = new RandomAccessFile(temp, "rw");
+                out.setLength(0);
+                out.write(records);
+                out.getFD().sync();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write " + temp, e);
+                return false;
+            } finally {
+                close(out);
+            }
+            synchronized (this) {
+                if (!temp.renameTo(file)) {
+                    Log.w(TAG, "Unable to replace " + file);
+                    return false;
+                }
+                for (Map.Entry<Long, int[]> entry : saving.entrySet()) {
+                    if (pending.get(entry.getKey()) == entry.getValue()) { // Not measured again since
+                        pending.remove(entry.getKey());
+                    }
+                }
+                map();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Copies the mapped records worth keeping and the unsaved entries into the bytes of a new
+     * file, sorted by key.
+     *
+     * @param saving receives the unsaved entries that went in
+     * @return the file's bytes, or null if there's nothing new to save
+     */
+    private synchronized byte[] snapshot(Map<Long, int[]> saving) {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        saving.putAll(pending);
+        final long[] fonts = new long[mappedCount + pending.size()];
+        final long[] keys = new long[fonts.length];
+        final int[][] values = new int[fonts.length][];
+        int count = 0;
+        for (int i = 0; i < mappedCount; i++) {
+            final int position = HEADER_SIZE + i * RECORD_SIZE;
+            final long font = mapped.getLong(position);
+            final long key = mapped.getLong(position + 8);
+            if (usedFonts.contains(font) && !pending.containsKey(key)) {
+                fonts[count] = font;
+                keys[count] = key;
+                values[count++] = new int[]{mapped.getInt(position + 16),
+                        mapped.getInt(position + 20), mapped.getInt(position + 24)};
+            }
+        }
+        for (Map.Entry<Long, int[]> entry : pending.entrySet()) {
+            final int[] value = entry.getValue();
+            fonts[count] = ((long) value[3] << 32) | (value[4] & 0xffffffffL);
+            keys[count] = entry.getKey();
+            values[count++] = value;
+        }
+
+        // Sort by key so lookups can binary search the mapped file
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareKeys(keys[a], keys[b]);
+            }
+        });
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(libraryVersion).putInt(count);
+        for (Integer i : order) {
+            buffer.putLong(fonts[i]).putLong(keys[i])
+                    .putInt(values[i][0]).putInt(values[i][1]).putInt(values[i][2]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Looks up a previously stored entry.
+     *
+     * @param key from boundsKey() or fitKey()
+     * @param out receives the three stored values
+     * @return True if the entry was found
+     */
+    synchronized boolean get(long key, int[] out) {
+        final int[] value = pending.get(key);
+        if (value != null) {
+            System.arraycopy(value, 0, out, 0, 3);
+            return true;
+        }
+        int low = 0;
+        int high = mappedCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int position = HEADER_SIZE + middle * RECORD_SIZE;
+            final int compare = compareKeys(mapped.getLong(position + 8), key);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                out[0] = mapped.getInt(position + 16);
+                out[1] = mapped.getInt(position + 20);
+                out[2] = mapped.getInt(position + 24);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores an entry, kept in memory until the next save().
+     */
+    synchronized void put(long font, long key, int a, int b, int c) {
+        pending.put(key, new int[]{a, b, c, (int) (font >>> 32), (int) font});
+        if (pending.size() * (long) PENDING_BYTES > maxPendingBytes) {
+            trimPending(maxPendingBytes);
+        }
+    }
+
+    /**
+     * Drops the oldest unsaved entries until they take up no more than bytes.
+     */
+    private synchronized void trimPending(long bytes) {
+        final Iterator<Long> keys = pending.keySet().iterator();
+        while (pending.size() * (long) PENDING_BYTES > bytes && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+            droppedEntries++;
+        }
+    }
+
+    /**
+     * Fingerprints the font the paint will render with by actually measuring it, so the same
+     * font gets the same fingerprint across runs (and a changed font file gets a new one).
+     * Fingerprints are cached per Typeface object.
+     *
+     * @param paint the paint about to be measured
+     * @return the fingerprint of the paint's font
+     */
+    synchronized long fontOf(TextPaint paint) {
+        final Typeface typeface = paint.getTypeface();
+        Long fingerprint = fingerprints.get(typeface);
+        if (fingerprint == null) {
+            probePaint.setTypeface(typeface);
+            probePaint.setTextSize(64);
+            final float[] widths = new float[PROBE.length()];
+            probePaint.getTextWidths(PROBE, 0, PROBE.length(), widths);
+            long hash = hash(FNV_OFFSET, Float.floatToIntBits(probePaint.ascent()));
+            hash = hash(hash, Float.floatToIntBits(probePaint.descent()));
+            for (float width : widths) {
+                hash = hash(hash, Float.floatToIntBits(width));
+            }
+            fingerprint = hash;
+            fingerprints.put(typeface, fingerprint);
+        }
+        long font = hash(fingerprint, paint.isFakeBoldText() ? 1 : 0);
+        font = hash(font, Float.floatToIntBits(paint.getTextScaleX()));
+        font = hash(font, Float.floatToIntBits(paint.getTextSkewX()));
+        font = hash(font, Float.floatToIntBits(MetricsCache.letterSpacing(paint)));
+        usedFonts.add(font);
+        return font;
+    }
+
+    /**
+     * @return Key for the results of TextDrawable.defaultBounds()
+     */
+    static long boundsKey(long font, float paintSize, float scaleText, float sizeText,
+                          boolean includeFontSpacing, String text) {
+        long hash = hash(hash(FNV_OFFSET, KIND_BOUNDS), font);
+        hash = hash(hash, Float.floatToIntBits(paintSize));
+        hash = hash(hash, Float.floatToIntBits(scaleText));
+        hash = hash(hash, Float.floatToIntBits(sizeText));
+        hash = hash(hash, includeFontSpacing ? 1 : 0);
+        return hash(hash, text);
+    }
+
+    /**
+     * @return Key for the results of TextDrawable.autoScaleText()
+     */
+    static long fitKey(long font, float parentW, float parentH, float targetSize, String text) {
+        long hash = hash(hash(FNV_OFFSET, KIND_FIT), font);
+        hash = hash(hash, Float.floatToIntBits(parentW));
+        hash = hash(hash, Float.floatToIntBits(parentH));
+        hash = hash(hash, Float.floatToIntBits(targetSize));
+        return hash(hash, text);
+    }
+
+    private void map() {
+        mapped = null;
+        mappedCount = 0;
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            final FileChannel channel = in.getChannel();
+            final long length = channel.size();
+            if (length < HEADER_SIZE) {
+                return;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            final int count = buffer.getInt(16);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                    || buffer.getLong(8) != libraryVersion
+                    || count < 0 || length != HEADER_SIZE + (long) count * RECORD_SIZE) {
+                return; // Stale or broken, it'll be replaced on the next save()
+            }
+            mapped = buffer;
+            mappedCount = count;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + file, e);
+        } finally {
+            close(in); // The mapping stays valid after the file is closed
+        }
+    }
+
+    private static void close(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static int compareKeys(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static long hash(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String text) {
+        hash = hash(hash, text.length());
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+}
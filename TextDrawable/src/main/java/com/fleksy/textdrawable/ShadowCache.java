@@ -0,0 +1,179 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+final class ShadowCache {
+
+    /**
+     * Default budget for all cached shadow masks (they're ALPHA_8, so a byte per pixel)
+     */
+    static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    /**
+     * Sized in bytes, the budget is enforced on put so it can change without resize() (API 21)
+     */
+    private static final LruCache<Key, Shadow> shadows = new LruCache<Key, Shadow>(Integer.MAX_VALUE) {
+        @Override
+        protected int sizeOf(Key key, Shadow shadow) {
+            return shadow.mask.getByteCount();
+        }
+    };
+
+    private static volatile int maxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * Lets the CacheRegistry measure and trim the shadow masks
+     */
+    static final CacheRegistry.Cache CACHE = new CacheRegistry.Cache() {
+        @Override
+        public long getSizeBytes() {
+            return shadows.size();
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return shadows.evictionCount();
+        }
+
+        @Override
+        public void setBudgetBytes(long bytes) {
+            maxBytes = (int) Math.min(bytes, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void trimToBytes(long bytes) {
+            shadows.trimToSize((int) Math.min(bytes, Integer.MAX_VALUE));
+        }
+    };
+
+    private static final Paint blurPaint = new Paint(); // UI thread only, like the rest of this class
+
+    private ShadowCache() {
+    }
+
+    /**
+     * Finds the blurred shadow mask for the layout's text, blurring it if no drawable has needed
+     * the same one yet. Only call this from the UI thread.
+     *
+     * @param layout the layout being drawn, its paint must not have a shadow layer
+     * @param text the text the layout was built from (cut off and ellipsized, if it was)
+     * @param radius the blur radius of the shadow
+     * @param alignment the layout's alignment
+     * @return the shadow mask and where to draw it relative to the layout
+     */
+    static Shadow get(Layout layout, String text, float radius, Layout.Alignment alignment) {
+        final TextPaint paint = layout.getPaint();
+        final Key key = new Key(text, paint.getTypeface(), paint.getTextSize(),
+                paint.isFakeBoldText(), paint.getStyle(), radius, layout.getWidth(), alignment);
+        Shadow shadow = shadows.get(key);
+        if (shadow == null) {
+            shadow = blur(layout, radius);
+            shadows.put(key, shadow);
+            if (shadows.size() > maxBytes) {
+                shadows.trimToSize(maxBytes);
+            }
+        }
+        return shadow;
+    }
+
+    /**
+     * @return How many times a mask wasn't cached yet and had to be blurred
+     */
+    static int missCount() {
+        return shadows.missCount();
+    }
+
+    private static Shadow blur(Layout layout, float radius) {
+        final TextPaint paint = layout.getPaint();
+        final int padding = (int) Math.ceil(paint.getTextSize() * TextDrawable.OVERHANG);
+        final Bitmap glyphs = Bitmap.createBitmap(Math.max(layout.getWidth(), 1) + 2 * padding,
+                Math.max(layout.getHeight(), 1) + 2 * padding, Bitmap.Config.ALPHA_8);
+        final Canvas canvas = new Canvas(glyphs);
+        canvas.translate(padding, padding); // Room for glyphs reaching past the layout
+        final int alpha = paint.getAlpha();
+        paint.setAlpha(CharacterUtils.MAX_ARGB); // The shadow's alpha is applied when it's drawn
+        layout.draw(canvas);
+        paint.setAlpha(alpha);
+
+        final int[] offset = new int[2];
+        blurPaint.setMaskFilter(radius > 0 ? new BlurMaskFilter(radius, BlurMaskFilter.Blur.NORMAL) : null);
+        final Bitmap mask = glyphs.extractAlpha(blurPaint, offset);
+        glyphs.recycle();
+        return new Shadow(mask, offset[0] - padding, offset[1] - padding);
+    }
+
+    /**
+     * A blurred alpha mask and its offset from the layout's origin
+     */
+    static final class Shadow {
+
+        final Bitmap mask;
+        final int left;
+        final int top;
+
+        Shadow(Bitmap mask, int left, int top) {
+            this.mask = mask;
+            this.left = left;
+            this.top = top;
+        }
+    }
+
+    private static final class Key {
+
+        final String text;
+        final Typeface typeface;
+        final float size;
+        final boolean bold;
+        final Paint.Style style;
+        final float radius;
+        final int width;
+        final Layout.Alignment alignment;
+
+        Key(String text, Typeface typeface, float size, boolean bold, Paint.Style style, float radius,
+            int width, Layout.Alignment alignment) {
+            this.text = text;
+            this.typeface = typeface;
+            this.size = size;
+            this.bold = bold;
+            this.style = style;
+            this.radius = radius;
+            this.width = width;
+            this.alignment = alignment;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return typeface == other.typeface && size == other.size && bold == other.bold
+                    && style == other.style && radius == other.radius && width == other.width
+                    && alignment == other.alignment && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = text.hashCode();
+            hash = 31 * hash + (typeface == null ? 0 : System.identityHashCode(typeface));
+            hash = 31 * hash + Float.floatToIntBits(size);
+            hash = 31 * hash + (bold ? 1 : 0);
+            hash = 31 * hash + (style == null ? 0 : style.hashCode());
+            hash = 31 * hash + Float.floatToIntBits(radius);
+            hash = 31 * hash + width;
+            return 31 * hash + (alignment == null ? 0 : alignment.hashCode());
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class SlideUpTextDrawable extends CharacterAnimationDrawable {
+
+    /**
+     * Characters that go away slide up and out a line's worth while the new ones slide up into
+     * place from a line below, one after another.
+     *
+     * @param msPerChar how long (ms) a single character takes to slide in
+     */
+    public SlideUpTextDrawable(float msPerChar) {
+        super(msPerChar);
+    }
+
+    SlideUpTextDrawable(float msPerChar, TextPaint paint) {
+        super(msPerChar, paint);
+    }
+
+    @Override
+    protected void outgoing(int index, Glyph glyph) {
+        final float percent = getPercent();
+        glyph.alpha = (int) ((1 - percent) * CharacterUtils.MAX_ARGB);
+        glyph.offsetY = -getTextSize() * percent;
+    }
+
+    @Override
+    protected void incoming(int index, Glyph glyph) {
+        final float fraction = stagger(index);
+        glyph.alpha = (int) (CharacterUtils.MAX_ARGB * fraction);
+        glyph.offsetY = getTextSize() * (1 - fraction);
+    }
+
+}
@@ -1,12 +1,26 @@
 package com.fleksy.textdrawable;
 
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.Picture;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.BoringLayout;
+import android.text.Layout;
 import android.text.Layout.Alignment;
 import android.text.StaticLayout;
 import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import java.text.BreakIterator;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by Fleksy.
@@ -14,6 +28,23 @@ import android.text.TextPaint;
  */
 public class TextDrawable extends BaseDrawable {
 
+    /**
+     * Default amount (px) the bounds have to change by before auto-fit bothers searching again
+     */
+    public static final int DEFAULT_AUTO_FIT_THRESHOLD = 4;
+
+    private static final String ELLIPSIS = "\u2026";
+
+    private static final int FIT_CACHE_SIZE = 8;
+
+    /**
+     * How far glyphs can reach past the layout bounds (italics, stacked accents, fake bold),
+     * relative to the text size
+     */
+    static final float OVERHANG = 0.5f;
+
+    private static volatile MetricsStore metricsStore;
+
     private CharSequence currentText = "";
 
     private boolean includeFontSpacing = false;
@@ -23,11 +54,59 @@ public class TextDrawable extends BaseDrawable {
     private float centerX = 0, centerY = 0;
     private float translateX = 0, translateY = 0;
 
-    private StaticLayout staticTextLayout;
+    private Layout textLayout;
+    private CharSequence layoutText = "";
+    private BoringLayout boringLayout;
+    private BoringLayout.Metrics boringMetrics;
+
+    private int maxLines = Integer.MAX_VALUE;
+    private TextUtils.TruncateAt ellipsize = null;
     private Alignment textAlignment = Alignment.ALIGN_CENTER;
 
+    private float autoFitMinSize = 0, autoFitMaxSize = 0;
+    private int autoFitThreshold = DEFAULT_AUTO_FIT_THRESHOLD;
+    private int fitWidth = -1, fitHeight = -1;
+    private CharSequence fitText;
+    private LruCache<FitKey, Float> fitCache;
+
+    private boolean recordingEnabled = false;
+    private boolean recordingValid = false;
+    private Picture recording;
+    private int recordingPadding;
+
+    private TextHitIndex hitIndex;
+    private boolean hitIndexValid = false;
+
+    private boolean shadowCacheEnabled = false;
+    private ShadowCache.Shadow shadow;
+    private Paint shadowPaint;
+
+    private LevelOfDetail levelOfDetail = LevelOfDetail.DEFAULT;
+
+    private TextStyle textStyle;
+
+    /**
+     * Metrics of the paint at the text size (not scaled), dropped whenever the paint changes.
+     * Saves finding the font in the global cache on every draw, which during a text scale
+     * animation would add a new font every frame.
+     */
+    private MetricsCache.Font metricsFont;
+
+    /**
+     * Cluster boundaries for visibleText(), kept between layouts
+     */
+    private int[] clusters = new int[0];
+
+    private final AtomicReference<String> pendingText = new AtomicReference<>();
+    private final Runnable invalidator = new Runnable() {
+        @Override
+        public void run() {
+            invalidateSelf();
+        }
+    };
+
     public TextDrawable() {
-        this(null);
+        this((String) null);
     }
 
     public TextDrawable(String text) {
@@ -54,7 +133,19 @@ public class TextDrawable extends BaseDrawable {
      * @param shadowColor Provides a shadow around the text
      */
     public TextDrawable(String text, Typeface typeface, float size, int color, int shadowColor) {
-        super(color, Paint.Style.FILL);
+        this(text, typeface, size, color, shadowColor, new TextPaint(TextPaint.ANTI_ALIAS_FLAG));
+    }
+
+    /**
+     * Draws with the paint passed in, for tests that need to watch what the paint is asked to do
+     */
+    TextDrawable(TextPaint paint) {
+        this(null, null, 0, 0, 0, paint);
+    }
+
+    private TextDrawable(String text, Typeface typeface, float size, int color, int shadowColor,
+                         TextPaint paint) {
+        super(color, Paint.Style.FILL, paint);
         this.currentText = text == null ? "" : text;
         setTypeFace(typeface);
         if (shadowColor != 0) {
@@ -65,14 +156,185 @@ public class TextDrawable extends BaseDrawable {
     }
 
     /**
-     * Constructs a static layout that handles all text rendering at the lowest level
+     * Constructs the layout that handles all text rendering at the lowest level. Text that fits
+     * on a single line with nothing fancy going on (no line breaks, no RTL) gets a BoringLayout,
+     * which skips line breaking entirely and draws with a single drawText(). Everything else
+     * gets a StaticLayout.
      *
      * @param bounds Primarily used for width sizing as height is determined by text size
      */
     private void createLayout(Rect bounds) {
-        staticTextLayout = new StaticLayout(currentText, getPaint(),
-                Math.max(bounds.width(), 0),
-                textAlignment, 1.0f, 0.0f, false);
+        final int width = Math.max(bounds.width(), 0);
+        final CharSequence text = visibleText(width);
+        layoutText = text;
+        final BoringLayout.Metrics metrics = boringMetrics(text, width);
+        if (metrics != null) {
+            boringMetrics = metrics;
+            boringLayout = makeBoringLayout(boringLayout, text, width, metrics);
+            textLayout = boringLayout;
+        } else {
+            textLayout = makeStaticLayout(text, width);
+        }
+        invalidateDrawCaches();
+    }
+
+    /**
+     * This and the two below are only split out so tests can count which layouts get built,
+     * and turn the boring path off to compare against.
+     *
+     * @return Metrics for laying the text out in a BoringLayout, or null if it needs a StaticLayout
+     */
+    BoringLayout.Metrics boringMetrics(CharSequence text, int width) {
+        final BoringLayout.Metrics metrics = BoringLayout.isBoring(text, getPaint(), boringMetrics);
+        return metrics != null && metrics.width <= width ? metrics : null;
+    }
+
+    /**
+     * @param reuse the last BoringLayout, which is reused if there is one
+     */
+    BoringLayout makeBoringLayout(BoringLayout reuse, CharSequence text, int width,
+                                  BoringLayout.Metrics metrics) {
+        return reuse == null
+                ? BoringLayout.make(text, getPaint(), width, textAlignment, 1.0f, 0.0f, metrics, false)
+                : reuse.replaceOrMake(text, getPaint(), width, textAlignment, 1.0f, 0.0f, metrics, false);
+    }
+
+    Layout makeStaticLayout(CharSequence text, int width) {
+        return new StaticLayout(text, getPaint(), width, textAlignment, 1.0f, 0.0f, false);
+    }
+
+    /**
+     * Cuts the text down to what will actually be visible with the max lines and ellipsize
+     * settings, so text that would never be seen is never laid out. Lines are found from the
+     * cached advance of every grapheme cluster, wrapping where the layout would, so only the
+     * last line gets measured natively and no cluster is ever cut in half.
+     *
+     * @param width the width the text is laid out in
+     * @return the text to lay out
+     */
+    CharSequence visibleText(int width) {
+        if ((maxLines == Integer.MAX_VALUE && ellipsize == null) || width <= 0
+                || currentText.length() == 0) {
+            return currentText;
+        }
+        final String text = currentText.toString();
+        final TextPaint paint = getPaint();
+        final int lines = maxLines == Integer.MAX_VALUE ? 1 : maxLines; // Ellipsizing alone means one line
+        if (lines == 1 && ellipsize != null && ellipsize != TextUtils.TruncateAt.END
+                && ellipsize != TextUtils.TruncateAt.MARQUEE && text.indexOf('\n') < 0) {
+            return TextUtils.ellipsize(text, paint, width, ellipsize); // START and MIDDLE
+        }
+
+        final int length = text.length();
+        if (clusters.length < length + 1) {
+            clusters = new int[length + 1];
+        }
+        final int count = CharacterUtils.graphemeBoundaries(text, clusters);
+        final MetricsCache.Font font = MetricsCache.font(paint);
+        final BreakIterator breaks = CharacterUtils.lineBreaks(text);
+        int cluster = 0;
+        int lastLineStart = 0;
+        int line = 0;
+        for (; line < lines && cluster < count; line++) {
+            lastLineStart = cluster;
+            cluster = nextLine(text, font, paint, breaks, clusters, count, cluster, width);
+        }
+        if (cluster >= count && (line < lines
+                || paint.measureText(text, clusters[lastLineStart], trimEnd(text, length)) <= width)) {
+            return currentText; // It all fits, with room to wrap if the last line is any wider
+        }
+        if (ellipsize == null) {
+            cluster = fitLine(text, paint, breaks, clusters, lastLineStart, cluster, width, true);
+            return text.substring(0, trimEnd(text, clusters[cluster]));
+        }
+        final float room = width - font.advance(paint, ELLIPSIS, 0, 1);
+        float x = 0;
+        int cut = lastLineStart;
+        while (cut < count && text.charAt(clusters[cut + 1] - 1) != '\n') {
+            x += font.advance(paint, text, clusters[cut], clusters[cut + 1]);
+            if (x > room) {
+                break;
+            }
+            cut++;
+        }
+        cut = fitLine(text, paint, breaks, clusters, lastLineStart, cut, room, false);
+        return text.substring(0, clusters[cut]) + ELLIPSIS;
+    }
+
+    /**
+     * The last line is found from cached advances, which know nothing about kerning or
+     * ligatures, so the layout could still find it a little wider, wrap an extra line, or push
+     * the ellipsis past the edge. Measures the line for real and backs its end up until it
+     * fits, which only ever costs a single measure when it already does.
+     *
+     * @param first the line's first cluster
+     * @param cut the first cluster cut off
+     * @param room the width the line has to fit in
+     * @param wrap True to back up to where the line can wrap and let whitespace hang past the
+     *             edge, False to back up a cluster at a time (the ellipsis goes right after it)
+     * @return The first cluster cut off, after backing up
+     */
+    private static int fitLine(String text, TextPaint paint, BreakIterator breaks, int[] clusters,
+                               int first, int cut, float room, boolean wrap) {
+        final int start = clusters[first];
+        final int least = wrap ? first + 1 : first;
+        while (cut > least && paint.measureText(text, start,
+                wrap ? Math.max(trimEnd(text, clusters[cut]), start) : clusters[cut]) > room) {
+            final int wrapAt = wrap ? breaks.preceding(clusters[cut]) : BreakIterator.DONE;
+            if (wrapAt > start) {
+                while (clusters[cut] > wrapAt) {
+                    cut--;
+                }
+            } else {
+                cut--;
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * @return Where the text ends before end, without the spaces and line breaks it ends with
+     */
+    private static int trimEnd(String text, int end) {
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Fits clusters on a line until one doesn't, then backs up to the last place the line can
+     * wrap. Whitespace at the end of a line doesn't take up room, the layout lets it hang past
+     * the edge, and a word too long for a line of its own is broken between clusters.
+     *
+     * @param first the line's first cluster
+     * @return The first cluster of the next line
+     */
+    private static int nextLine(String text, MetricsCache.Font font, TextPaint paint,
+                                BreakIterator breaks, int[] clusters, int count, int first, int width) {
+        float x = 0;
+        for (int cluster = first; cluster < count; cluster++) {
+            final int start = clusters[cluster];
+            final int end = clusters[cluster + 1];
+            if (text.charAt(end - 1) == '\n') {
+                return cluster + 1; // Through the line break
+            }
+            x += font.advance(paint, text, start, end);
+            if (x <= width || Character.isWhitespace(text.charAt(start))) {
+                continue;
+            }
+            final int wrap = breaks.isBoundary(start) ? start : breaks.preceding(start);
+            if (wrap > clusters[first]) {
+                while (clusters[cluster] > wrap) {
+                    cluster--;
+                }
+                if (clusters[cluster] == wrap) {
+                    return cluster;
+                }
+            }
+            return Math.max(cluster, first + 1);
+        }
+        return count;
     }
 
     @Override
@@ -90,19 +352,358 @@ public class TextDrawable extends BaseDrawable {
                 setTranslationX(0);
                 break;
         }
+        autoFit(bounds);
         createLayout(bounds);
     }
 
     @Override
     public void draw(Canvas canvas) {
-        if (isShown() && staticTextLayout != null) {
+        applyPendingText();
+        if (isShown() && textLayout != null) {
+            final int detail = levelOfDetail.detailFor(textSize * textScale, getAlpha());
+            if (detail == LevelOfDetail.SKIP) {
+                return; // Too small or faint to see
+            }
             canvas.save();
             canvas.translate(centerX + translateX, getBaseline());
-            staticTextLayout.draw(canvas);
+            if (detail == LevelOfDetail.PLACEHOLDER) {
+                drawPlaceholders(canvas);
+            } else {
+                if (shadowCacheEnabled) {
+                    drawCachedShadow(canvas);
+                }
+                if (recordingEnabled && canReplay(canvas)) {
+                    drawRecording(canvas);
+                } else {
+                    textLayout.draw(canvas);
+                }
+            }
             canvas.restore();
         }
     }
 
+    /**
+     * Draws a rect over every line instead of the text, for text too small to make out.
+     */
+    private void drawPlaceholders(Canvas canvas) {
+        final float height = LevelOfDetail.placeholderHeight(textSize * textScale);
+        for (int line = 0; line < textLayout.getLineCount(); line++) {
+            final float baseline = textLayout.getLineBaseline(line);
+            canvas.drawRect(textLayout.getLineLeft(line), baseline - height,
+                    textLayout.getLineRight(line), baseline, getPaint());
+        }
+    }
+
+    /**
+     * Sets the rules for when text is too small or faint to be worth drawing for real, which
+     * mostly kicks in at tiny text scales and during animations.
+     *
+     * @param levelOfDetail the rules to follow, null for LevelOfDetail.NONE. Default is LevelOfDetail.DEFAULT
+     */
+    public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+        this.levelOfDetail = levelOfDetail == null ? LevelOfDetail.NONE : levelOfDetail;
+    }
+
+    /**
+     * @return The rules for when text is too small or faint to be worth drawing
+     */
+    public LevelOfDetail getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /**
+     * Records the layout's draw calls into a Picture once and replays them on every draw after
+     * that, skipping the layout traversal and line shaping as long as the text, bounds, and paint
+     * stay the same. Unlike caching a bitmap the text stays sharp on scaled canvases.
+     *
+     * Translation is applied on top of the recording, and alpha below full is applied through an
+     * offscreen layer, which costs more than a regular draw, so turn this off for drawables that
+     * fade constantly. Hardware accelerated canvases can only replay pictures on Marshmallow and
+     * up, anything older draws the layout like normal.
+     *
+     * @param enabled True to record and replay, False to draw the layout every time. Default is False
+     */
+    public void setRecordingEnabled(boolean enabled) {
+        recordingEnabled = enabled;
+        if (!enabled) {
+            recording = null;
+            recordingValid = false;
+        }
+    }
+
+    /**
+     * @return True if draws are being recorded and replayed
+     */
+    public boolean isRecordingEnabled() {
+        return recordingEnabled;
+    }
+
+    /**
+     * @return How far (px) drawing can reach past the layout bounds: overhanging glyphs, plus
+     * the blur of the paint's shadow layer, which reaches out about twice its radius
+     */
+    private int drawPadding() {
+        final boolean paintShadow = !shadowCacheEnabled && Color.alpha(getShadowColor()) != 0;
+        final float shadow = paintShadow ? getShadowRadius() * 2 : 0;
+        return (int) Math.ceil(textSize * textScale * OVERHANG + shadow);
+    }
+
+    private static boolean canReplay(Canvas canvas) {
+        return !canvas.isHardwareAccelerated() || Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * Replays the recorded layout, recording it first if anything changed since the last draw.
+     * The recording is always made at full alpha so alpha changes don't throw it out. It's
+     * padded on every side by drawPadding(), so overhanging glyphs and the shadow aren't clipped
+     * by the recording (or the alpha layer) where the direct draw would show them.
+     *
+     * @param canvas already translated to where the layout is drawn
+     */
+    private void drawRecording(Canvas canvas) {
+        final int alpha = getPaint().getAlpha();
+        if (alpha == 0) {
+            return;
+        }
+        if (!recordingValid) {
+            if (recording == null) {
+                recording = new Picture();
+            }
+            recordingPadding = drawPadding();
+            getPaint().setAlpha(CharacterUtils.MAX_ARGB);
+            final Canvas recorder = recording.beginRecording(textLayout.getWidth() + 2 * recordingPadding,
+                    textLayout.getHeight() + 2 * recordingPadding);
+            recorder.translate(recordingPadding, recordingPadding);
+            textLayout.draw(recorder);
+            recording.endRecording();
+            getPaint().setAlpha(alpha);
+            recordingValid = true;
+        }
+        canvas.translate(-recordingPadding, -recordingPadding); // Undone by draw()'s restore()
+        if (alpha < CharacterUtils.MAX_ARGB) {
+            canvas.saveLayerAlpha(0, 0, recording.getWidth(), recording.getHeight(),
+                    alpha, Canvas.ALL_SAVE_FLAG);
+            canvas.drawPicture(recording);
+            canvas.restore();
+        } else {
+            canvas.drawPicture(recording);
+        }
+    }
+
+    /**
+     * Instead of blurring the shadow on every draw (which is what the paint's shadow layer does),
+     * blur it once into an alpha mask and draw that mask under the text. Masks are shared between
+     * drawables showing the same text in the same font, size, and shadow radius. Animated frames
+     * of an AnimationTextDrawable move glyphs around, so those are drawn with the paint's shadow.
+     *
+     * @param enabled True to cache the shadow, False to let the paint draw it. Default is False
+     */
+    public void setShadowCacheEnabled(boolean enabled) {
+        if (shadowCacheEnabled == enabled) {
+            return;
+        }
+        shadowCacheEnabled = enabled;
+        shadow = null;
+        if (enabled) {
+            getPaint().clearShadowLayer();
+        } else if (getShadowColor() != 0) {
+            getPaint().setShadowLayer(getShadowRadius(), 0, 0, getShadowColor());
+        }
+        invalidateDrawCaches();
+    }
+
+    /**
+     * @return True if the shadow is blurred once and cached rather than blurred on every draw
+     */
+    public boolean isShadowCacheEnabled() {
+        return shadowCacheEnabled;
+    }
+
+    @Override
+    public void setShadow(int color, float radius) {
+        super.setShadow(color, radius);
+        if (shadowCacheEnabled) {
+            getPaint().clearShadowLayer(); // The cached mask takes care of it
+        }
+    }
+
+    /**
+     * Puts the shadow back on the paint when the cached mask can't be used, like when the glyphs
+     * are drawn one by one in animation frames. Undo it with endPaintShadow().
+     *
+     * @return True if the shadow layer was set and has to be cleared again
+     */
+    final boolean beginPaintShadow() {
+        if (!shadowCacheEnabled || Color.alpha(getShadowColor()) == 0) {
+            return false; // The paint already has whatever shadow it should
+        }
+        getPaint().setShadowLayer(getShadowRadius(), 0, 0, getShadowColor());
+        return true;
+    }
+
+    final void endPaintShadow() {
+        getPaint().clearShadowLayer();
+    }
+
+    /**
+     * Draws the cached shadow mask, blurring it first if there isn't one for the laid out text yet.
+     * The mask is keyed on the text the layout was built from, not the full text, so drawables
+     * cutting the same text off at different places never share one.
+     *
+     * @param canvas already translated to where the layout is drawn
+     */
+    private void drawCachedShadow(Canvas canvas) {
+        final int color = getShadowColor();
+        final int alpha = getPaint().getAlpha();
+        if (Color.alpha(color) == 0 || alpha == 0 || layoutText.length() == 0) {
+            return;
+        }
+        if (shadow == null) {
+            shadow = ShadowCache.get(textLayout, layoutText.toString(), getShadowRadius(),
+                    textAlignment);
+        }
+        if (shadowPaint == null) {
+            shadowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        }
+        shadowPaint.setColor(color);
+        shadowPaint.setAlpha(Color.alpha(color) * alpha / CharacterUtils.MAX_ARGB);
+        canvas.drawBitmap(shadow.mask, shadow.left, shadow.top, shadowPaint);
+    }
+
+    /**
+     * Throws out the recorded picture and shadow mask so they're rebuilt on the next draw.
+     */
+    private void invalidateDrawCaches() {
+        recordingValid = false;
+        shadow = null;
+        hitIndexValid = false;
+    }
+
+    /**
+     * Also called when the text size, typeface, or boldness change.
+     */
+    @Override
+    protected void onPaintChanged() {
+        super.onPaintChanged();
+        textStyle = null; // The paint no longer matches the style
+        metricsFont = null;
+        invalidateDrawCaches();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        final TextStyle style = textStyle;
+        super.setColorFilter(cf);
+        textStyle = style; // Filters go on top of the style, they don't replace it
+    }
+
+    /**
+     * Applies the typeface, size, boldness, color, paint style, and shadow of the style all at
+     * once, throwing out the caches and relaying out a single time rather than once per setter.
+     * Styles are interned, so applying the style the drawable already has is free, and every
+     * drawable with the same style shares its auto-fit results (font metrics are already shared
+     * per typeface, size, and boldness). Animations are cancelled like with setColor(). With
+     * auto-fit on the style's size is ignored, and a style with the same typeface and boldness
+     * keeps the size that was fitted rather than fitting all over again.
+     *
+     * @param style the style to apply, not null
+     */
+    public void setTextStyle(TextStyle style) {
+        if (style == textStyle) {
+            return;
+        }
+        final TextStyle previous = textStyle;
+        onCancelAnimations();
+        applyStyle(style.getColor(), style.getStyle(), style.getShadowColor(),
+                style.getShadowRadius(), !shadowCacheEnabled && style.getShadowColor() != 0);
+        final TextPaint paint = getPaint();
+        paint.setTypeface(style.getTypeface());
+        paint.setFakeBoldText(style.isBold());
+        final boolean fitted = isAutoFit();
+        if (!fitted) {
+            textSize = style.getTextSize(); // Otherwise the fit picks the size, keep the last one
+        }
+        paint.setTextSize(textSize);
+        onPaintChanged(); // Drops the cached metrics, recording, and shadow like any paint change
+        textStyle = style;
+
+        if (!style.measuresLike(previous, fitted)) {
+            invalidateAutoFit(); // Otherwise the last fit still holds, only the refit is skipped
+        }
+        if (textLayout != null) {
+            autoFit(getCurrentBounds());
+            createLayout(getCurrentBounds());
+        }
+    }
+
+    /**
+     * @return The style last applied with setTextStyle(), or null if there isn't one or the
+     * paint has been changed through the other setters since
+     */
+    public TextStyle getTextStyle() {
+        return textStyle;
+    }
+
+    /**
+     * Finds where a cursor would land for a touch, without going through the layout. The first
+     * hit test after the layout changes measures every character once, after that it's just a
+     * couple of binary searches.
+     *
+     * @param x x-coordinate, in the same coordinates as the bounds
+     * @param y y-coordinate, in the same coordinates as the bounds
+     * @return The offset of the character boundary closest to the point (clamped to the nearest
+     * line, never inside a grapheme cluster), or -1 if there's no text laid out
+     */
+    public int getOffsetForPosition(float x, float y) {
+        final TextHitIndex index = getHitIndex();
+        if (index == null) {
+            return -1;
+        }
+        final int line = index.lineForY(y - getBaseline());
+        return line < 0 ? -1 : index.offsetForX(line, x - centerX - translateX);
+    }
+
+    /**
+     * Finds the character drawn under a point, great for per-glyph touch feedback.
+     *
+     * @param x x-coordinate, in the same coordinates as the bounds
+     * @param y y-coordinate, in the same coordinates as the bounds
+     * @return The offset of the character under the point (the start of its grapheme cluster),
+     * or -1 if there isn't one
+     */
+    public int getCharacterForPosition(float x, float y) {
+        final TextHitIndex index = getHitIndex();
+        final float layoutY = y - getBaseline();
+        if (index == null || !index.isWithinLines(layoutY)) {
+            return -1;
+        }
+        return index.characterForX(index.lineForY(layoutY), x - centerX - translateX, false);
+    }
+
+    /**
+     * @param y y-coordinate, in the same coordinates as the bounds
+     * @return The line closest to y, or -1 if there's no text laid out
+     */
+    public int getLineForPosition(float y) {
+        final TextHitIndex index = getHitIndex();
+        return index == null ? -1 : index.lineForY(y - getBaseline());
+    }
+
+    private TextHitIndex getHitIndex() {
+        if (textLayout == null) {
+            return null;
+        }
+        if (!hitIndexValid) {
+            if (hitIndex == null) {
+                hitIndex = new TextHitIndex();
+            }
+            getBaseline(); // Puts the paint back at the size the layout is drawn with
+            hitIndex.build(textLayout);
+            hitIndexValid = true;
+        }
+        return hitIndex;
+    }
+
     /**
      * @return The current text
      */
@@ -127,17 +728,95 @@ public class TextDrawable extends BaseDrawable {
      * @return True of the text was updated, False if not
      */
     public boolean setText(String text) {
+        pendingText.getAndSet(null); // Anything posted before this is out of date, in one atomic step
+        return applyText(text);
+    }
+
+    private boolean applyText(String text) {
         if (text == null) {
             text = "";
         }
         final boolean changedText = !this.currentText.equals(text);
         this.currentText = text;
-        if (changedText || staticTextLayout == null) {
+        if (changedText || textLayout == null) {
+            autoFit(getCurrentBounds());
             createLayout(getCurrentBounds());
         }
         return changedText;
     }
 
+    /**
+     * Sets the text from any thread. Only the newest text posted before the next draw is laid
+     * out, everything it replaced is dropped without ever being laid out, so a producer can
+     * post as often as it likes. Posting never blocks, the text sits in a single atomic slot
+     * until draw() picks it up on the UI thread.
+     *
+     * The drawable needs a callback (usually its View) for the redraw to be scheduled, and
+     * getText() keeps returning the old text until then.
+     *
+     * @param text the text to display
+     */
+    public void postText(CharSequence text) {
+        if (pendingText.getAndSet(text == null ? "" : text.toString()) == null) {
+            MainHandler.INSTANCE.post(invalidator); // First text since the last draw, ask for one
+        }
+    }
+
+    /**
+     * Lays out the text from the latest postText() call, if there's been one since the last
+     * draw. Only call this from the UI thread.
+     *
+     * @return True if posted text was applied
+     */
+    protected final boolean applyPendingText() {
+        final String text = pendingText.getAndSet(null);
+        if (text == null) {
+            return false;
+        }
+        applyText(text);
+        return true;
+    }
+
+    /**
+     * Limits how many lines are laid out. Lines past the limit are cut off (or ellipsized, see
+     * setEllipsize()) before the layout is built.
+     *
+     * @param maxLines the most lines to show, Integer.MAX_VALUE for no limit (the default)
+     */
+    public void setMaxLines(int maxLines) {
+        this.maxLines = Math.max(1, maxLines);
+        if (textLayout != null) {
+            createLayout(getCurrentBounds());
+        }
+    }
+
+    /**
+     * @return The most lines that will be shown
+     */
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * Ellipsizes text that doesn't fit in the max lines (or in one line if max lines isn't set).
+     * END works with any number of lines, START and MIDDLE only with a single line.
+     *
+     * @param where where the ellipsis goes, or null to cut the text off without one (the default)
+     */
+    public void setEllipsize(TextUtils.TruncateAt where) {
+        this.ellipsize = where;
+        if (textLayout != null) {
+            createLayout(getCurrentBounds());
+        }
+    }
+
+    /**
+     * @return Where the text gets ellipsized, or null if it doesn't
+     */
+    public TextUtils.TruncateAt getEllipsize() {
+        return ellipsize;
+    }
+
     /**
      * @return The current text size
      */
@@ -153,6 +832,7 @@ public class TextDrawable extends BaseDrawable {
     public void setTextSize(float size) {
         textSize = size;
         getPaint().setTextSize(size);
+        onPaintChanged();
     }
 
     /**
@@ -165,6 +845,8 @@ public class TextDrawable extends BaseDrawable {
      */
     public void setTypeFace(Typeface font) {
         getPaint().setTypeface(font);
+        invalidateAutoFit();
+        onPaintChanged();
     }
 
     /**
@@ -200,14 +882,54 @@ public class TextDrawable extends BaseDrawable {
      * @return Provides the artificial location of where the glyphs align along the bottom.
      */
     public float getBaseline() {
-        return centerY + getYPositioning(getPaint(), textScale, textSize) + translateY;
+        return centerY + getYPositioning() + translateY;
+    }
+
+    /**
+     * Same as getYPositioning(TextPaint, float, float) for the drawable's own paint, without
+     * finding the font again for every text scale. Font metrics grow linearly with the size, so
+     * the ones at the text size are scaled instead.
+     */
+    private int getYPositioning() {
+        final TextPaint paint = getPaint();
+        if (metricsFont == null) {
+            paint.setTextSize(textSize);
+            metricsFont = MetricsCache.font(paint);
+            metricsFont.ascentMinusDescent(paint); // Measured at the text size, before the paint scales
+        }
+        paint.setTextSize(textSize * textScale); // Updates the paint the appropriate text size vs scale
+        final int in = Math.round(metricsFont.ascentMinusDescent(paint) / 2.0f);
+        return (int) (in / textScale);
     }
 
     /**
      * @return Return the vertical position of the baseline of the lowest line.
      */
     public float getBottomBaseLine() {
-        return staticTextLayout.getLineBaseline(staticTextLayout.getLineCount() - 1) + getBaseline();
+        return textLayout.getLineBaseline(textLayout.getLineCount() - 1) + getBaseline();
+    }
+
+    /**
+     * @return Where the left edge of the layout is drawn horizontally, in the same coordinates
+     * as the bounds
+     */
+    float getLayoutLeft() {
+        return centerX + translateX;
+    }
+
+    /**
+     * @return The layout the text is currently drawn with, null until there's text to lay out
+     */
+    Layout getLayout() {
+        return textLayout;
+    }
+
+    /**
+     * @return The text the layout was built from, what max lines cut off is left out and the
+     * ellipsis is in. Same as getLayout().getText(), without going through the layout.
+     */
+    CharSequence getLayoutText() {
+        return textLayout == null ? currentText : layoutText;
     }
 
     /**
@@ -271,6 +993,104 @@ public class TextDrawable extends BaseDrawable {
 
     public void setBold(boolean bold) {
         getPaint().setFakeBoldText(bold);
+        invalidateAutoFit();
+        onPaintChanged();
+    }
+
+    /**
+     * Lets the drawable size its own text. Whenever the text or bounds change, the text size is
+     * refit to the largest size between minSize and maxSize that fits the bounds. Fits are cached
+     * per (text, width, height), and bounds changes smaller than the auto-fit threshold are
+     * ignored so animated resizes don't search on every frame. Calling setTextSize() yourself
+     * works until the next refit.
+     *
+     * @param minSize the smallest text size allowed, used when nothing fits
+     * @param maxSize the largest (preferred) text size
+     */
+    public void setAutoFit(float minSize, float maxSize) {
+        autoFitMinSize = Math.max(0, Math.min(minSize, maxSize));
+        autoFitMaxSize = Math.max(minSize, maxSize);
+        invalidateAutoFit();
+        if (textLayout != null) {
+            autoFit(getCurrentBounds());
+            createLayout(getCurrentBounds());
+        }
+    }
+
+    /**
+     * Turns auto-fit off. The current text size stays where the last fit left it.
+     */
+    public void clearAutoFit() {
+        autoFitMinSize = autoFitMaxSize = 0;
+        invalidateAutoFit();
+    }
+
+    /**
+     * @return True if the text size is being fit to the bounds automatically
+     */
+    public boolean isAutoFit() {
+        return autoFitMaxSize > 0;
+    }
+
+    /**
+     * Bounds changes smaller than this (in px, on both width and height) keep the previous fit.
+     *
+     * @param threshold the hysteresis in px. Default is DEFAULT_AUTO_FIT_THRESHOLD
+     */
+    public void setAutoFitThreshold(int threshold) {
+        autoFitThreshold = Math.max(0, threshold);
+    }
+
+    /**
+     * Forgets the previous fits, needed whenever something changes how the glyphs measure. Fits
+     * shared through a TextStyle are left alone, nothing about the style can change.
+     */
+    private void invalidateAutoFit() {
+        fitWidth = fitHeight = -1;
+        fitText = null;
+        if (fitCache != null) {
+            fitCache.evictAll();
+        }
+    }
+
+    /**
+     * Refits the text size to the given bounds, if auto-fit is on and it's actually needed.
+     *
+     * @param bounds the bounds the text has to fit inside of
+     */
+    private void autoFit(Rect bounds) {
+        final int width = bounds.width();
+        final int height = bounds.height();
+        if (!isAutoFit() || width <= 0 || height <= 0) {
+            return;
+        }
+        if (currentText.equals(fitText)
+                && Math.abs(width - fitWidth) < autoFitThreshold
+                && Math.abs(height - fitHeight) < autoFitThreshold) {
+            return; // Close enough, keep the last fit
+        }
+        fitText = currentText;
+        fitWidth = width;
+        fitHeight = height;
+
+        final TextStyle style = textStyle;
+        final LruCache<FitKey, Float> cache;
+        if (style != null) {
+            cache = style.fitCache();
+        } else {
+            if (fitCache == null) {
+                fitCache = new LruCache<>(FIT_CACHE_SIZE);
+            }
+            cache = fitCache;
+        }
+        final FitKey key = new FitKey(currentText.toString(), width, height, autoFitMinSize, autoFitMaxSize);
+        Float size = cache.get(key);
+        if (size == null) {
+            size = fitTextSize(getPaint(), key.text, width, height, autoFitMinSize, autoFitMaxSize);
+            cache.put(key, size);
+        }
+        setTextSize(size);
+        textStyle = style; // Fitting the size doesn't take the drawable off its style
     }
 
     /**
@@ -285,6 +1105,7 @@ public class TextDrawable extends BaseDrawable {
      */
     public void setTextScale(float scale) {
         textScale = scale;
+        invalidateDrawCaches();
     }
 
     /**
@@ -300,8 +1121,9 @@ public class TextDrawable extends BaseDrawable {
      */
     private static int getYPositioning(TextPaint paint, float textScale, float textSize) {
         paint.setTextSize(textSize * textScale); // Updates the paint the appropriate text size vs scale
+        final MetricsCache.Font font = MetricsCache.font(paint);
         final int in = Math.round( // Better to round up
-                (paint.ascent() - paint.descent()) // Returns the difference between the ascent and descent
+                font.ascentMinusDescent(paint) // Returns the difference between the ascent and descent
                         / (textScale * 2.0f) // This has to do with us finding the y-coordinate halfway between the top and bottom
         );
         return (int) (in / textScale);
@@ -319,6 +1141,17 @@ public class TextDrawable extends BaseDrawable {
         if (text == null) {
             text = "";
         }
+        final MetricsStore store = metricsStore;
+        long font = 0, key = 0;
+        if (store != null) {
+            font = store.fontOf(paint);
+            key = MetricsStore.boundsKey(font, paint.getTextSize(), scaleText, sizeText, includeFontSpacing, text);
+            final int[] stored = new int[3];
+            if (store.get(key, stored)) {
+                paint.setTextSize(sizeText * scaleText); // Leave the paint the way getYPositioning() would
+                return new Rect(0, 0, stored[0], stored[1] + Math.abs(stored[2]));
+            }
+        }
         int maxWidth = (int) paint.measureText(text);
         int maxHeight = 0;
         final String[] lines = text.split("\r\n|\r|\n");
@@ -331,8 +1164,43 @@ public class TextDrawable extends BaseDrawable {
         if (includeFontSpacing) {
             maxWidth += paint.getFontSpacing();
         }
-        return new Rect(0, 0, maxWidth, maxHeight +
-                Math.abs(getYPositioning(paint, scaleText, sizeText)));
+        final int yPositioning = getYPositioning(paint, scaleText, sizeText);
+        if (store != null) {
+            store.put(font, key, maxWidth, maxHeight, yPositioning);
+        }
+        return new Rect(0, 0, maxWidth, maxHeight + Math.abs(yPositioning));
+    }
+
+    /**
+     * Gets a typeface ready before it's first shown. The font metrics and character advances that
+     * layout and animations rely on are measured on a background thread for every size, so the
+     * first setText() or animateText() with the typeface doesn't stall on cold font caches.
+     *
+     * @param typeface the typeface that's about to be used (null for the default)
+     * @param sizes every text size it will be drawn at
+     * @param charset the characters expected to be shown, like the keys of a keyboard layout
+     * @return a Future that completes once everything has been measured
+     * @throws IllegalArgumentException if sizes is null, or holds a size that isn't positive
+     */
+    public static Future<?> prewarm(Typeface typeface, float[] sizes, CharSequence charset) {
+        final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setSubpixelText(true); // Same flags as every drawable's paint, so they share the metrics
+        paint.setTypeface(typeface);
+        return MetricsCache.prewarm(paint, sizes, charset);
+    }
+
+    /**
+     * Same as prewarm(Typeface, float[], CharSequence), but measured the way this drawable draws.
+     * Whatever changes how its paint measures (fake bold, horizontal scale, letter spacing) is
+     * warmed along with the typeface, so set the drawable up first.
+     *
+     * @param sizes every text size the drawable will be drawn at
+     * @param charset the characters expected to be shown, like the keys of a keyboard layout
+     * @return a Future that completes once everything has been measured
+     * @throws IllegalArgumentException if sizes is null, or holds a size that isn't positive
+     */
+    public Future<?> prewarm(float[] sizes, CharSequence charset) {
+        return MetricsCache.prewarm(getPaint(), sizes, charset);
     }
 
     /**
@@ -363,6 +1231,18 @@ public class TextDrawable extends BaseDrawable {
 
         final Rect bounds = new Rect();
         final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+        final MetricsStore store = metricsStore;
+        long font = 0, key = 0;
+        if (store != null) {
+            font = store.fontOf(paint);
+            key = MetricsStore.fitKey(font, parentW, parentH, targetTextSize, text);
+            final int[] stored = new int[3];
+            if (store.get(key, stored)) {
+                return Float.intBitsToFloat(stored[0]);
+            }
+        }
+
         paint.setTextSize(targetTextSize);
         paint.getTextBounds(text, 0, text.length(), bounds);
 
@@ -375,26 +1255,134 @@ public class TextDrawable extends BaseDrawable {
                 targetTextSize = wantedSize;
                 paint.setTextSize(wantedSize);
             }
-            return targetTextSize;
         }
 
+        if (store != null) {
+            store.put(font, key, Float.floatToIntBits(targetTextSize), 0, 0);
+        }
         return targetTextSize;
     }
 
     /**
-     * Very expensive.
+     * Installs a store of precomputed metrics that defaultBounds() and autoScaleText() check
+     * before measuring, and fill as they go. Pass null to go back to always measuring.
+     *
+     * @param store the store opened with MetricsStore.open(), or null
+     */
+    public static void setMetricsStore(MetricsStore store) {
+        metricsStore = store;
+    }
+
+    /**
+     * @return The installed metrics store, or null if there isn't one
+     */
+    public static MetricsStore getMetricsStore() {
+        return metricsStore;
+    }
+
+    /**
+     * Binary searches for the largest text size between minSize and maxSize that fits the parent.
+     * Way cheaper than stepping down a pixel at a time, but still lays out text at every step.
+     *
+     * @param paint the paint to measure with, its text size is left at whatever was tried last
+     * @param text String of text to be sized
+     * @param parentW Width of the parent
+     * @param parentH Height of the parent
+     * @param minSize smallest size allowed, returned if nothing fits
+     * @param maxSize largest size wanted
+     * @return the largest fitting size, to within half a pixel
+     */
+    static float fitTextSize(TextPaint paint, String text, float parentW, float parentH,
+                             float minSize, float maxSize) {
+        if (text.length() == 0 || fitsParent(text, paint, parentW, parentH, maxSize)) {
+            return maxSize;
+        }
+        return searchFit(paint, text, parentW, parentH, minSize, maxSize);
+    }
+
+    /**
+     * The bisection half of fitTextSize(), for callers that already know which sizes fit.
+     *
+     * @param fits a size known to fit (or the floor to settle for)
+     * @param tooBig a size known not to fit
+     * @return the largest fitting size between the two, to within half a pixel
+     */
+    static float searchFit(TextPaint paint, String text, float parentW, float parentH,
+                           float fits, float tooBig) {
+        while (tooBig - fits > 0.5f) {
+            final float size = (fits + tooBig) / 2f;
+            if (fitsParent(text, paint, parentW, parentH, size)) {
+                fits = size;
+            } else {
+                tooBig = size;
+            }
+        }
+        return fits;
+    }
+
+    /**
+     * Very expensive, unless the text is a single plain line, in which case the height comes
+     * straight from the font metrics instead of laying the text out.
      *
      * @return True if the text fits within the given parent width/height with the given textSize
      */
-    private static boolean fitsParent(final String text, final TextPaint paint,
-                                      final float parentW, final float parentH, float textSize) {
+    static boolean fitsParent(final String text, final TextPaint paint,
+                              final float parentW, final float parentH, float textSize) {
         paint.setTextSize(textSize);
         Rect bounds = new Rect();
         paint.getTextBounds(text, 0, text.length(), bounds);
+        final BoringLayout.Metrics boring = BoringLayout.isBoring(text, paint);
+        if (boring != null) {
+            return boring.descent - boring.ascent <= parentH && bounds.width() <= parentW;
+        }
         StaticLayout textLayout = new StaticLayout(text, paint, bounds.width(), Alignment.ALIGN_NORMAL, 0.0f, 0.0f, false);
         return (textLayout.getHeight() <= parentH && textLayout.getWidth() <= parentW) &&
                 (Math.abs(parentH - textLayout.getHeight()) >= 0 &&
                         Math.abs(parentW - textLayout.getWidth()) >= 0);
     }
 
+    /**
+     * Key for a previous auto-fit result. The size range is part of it since drawables sharing
+     * a TextStyle share their fits too, whatever range they were given.
+     */
+    static final class FitKey {
+
+        final String text;
+        final int width, height;
+        final float minSize, maxSize;
+
+        FitKey(String text, int width, int height, float minSize, float maxSize) {
+            this.text = text;
+            this.width = width;
+            this.height = height;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FitKey)) {
+                return false;
+            }
+            final FitKey other = (FitKey) o;
+            return width == other.width && height == other.height && minSize == other.minSize
+                    && maxSize == other.maxSize && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * (31 * text.hashCode() + width) + height;
+            hash = 31 * hash + Float.floatToIntBits(minSize);
+            return 31 * hash + Float.floatToIntBits(maxSize);
+        }
+    }
+
+    /**
+     * Created the first time text is posted, as most drawables never need it
+     */
+    private static final class MainHandler {
+
+        static final Handler INSTANCE = new Handler(Looper.getMainLooper());
+    }
+
 }
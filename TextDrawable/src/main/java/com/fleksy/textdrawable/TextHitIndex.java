@@ -0,0 +1,198 @@
+package com.fleksy.textdrawable;
+
+import android.text.Layout;
+import android.text.TextPaint;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+final class TextHitIndex {
+
+    private int lineCount;
+
+    /**
+     * Top of every line, followed by the bottom of the last one
+     */
+    private int[] lineTops = new int[1];
+
+    /**
+     * Index of every line's first cluster in bounds and edges, followed by the number used
+     */
+    private int[] lineFirsts = new int[1];
+
+    /**
+     * Start of every grapheme cluster of a line followed by where the line ends (not counting a
+     * trailing line break), one line after the other. Hits never land inside a cluster.
+     */
+    private int[] bounds = new int[1];
+
+    /**
+     * Horizontal edge of every entry in bounds (the leading edge of the cluster there)
+     */
+    private float[] edges = new float[1];
+
+    /**
+     * True for lines laid out right to left, where edges run from right to left
+     */
+    private boolean[] rtl = new boolean[0];
+
+    private float[] widths = new float[0];
+    private int[] clusters = new int[1];
+
+    /**
+     * Walks the layout once, measuring every cluster, so hit tests never have to touch the
+     * layout. Arrays are reused between builds whenever they're big enough.
+     *
+     * @param layout the layout being hit tested
+     */
+    void build(Layout layout) {
+        final CharSequence text = layout.getText();
+        final TextPaint paint = layout.getPaint();
+        final int length = text.length();
+        lineCount = layout.getLineCount();
+
+        if (lineTops.length < lineCount + 1) {
+            lineTops = new int[lineCount + 1];
+            lineFirsts = new int[lineCount + 1];
+            rtl = new boolean[lineCount];
+        }
+        if (bounds.length < length + lineCount + 1) {
+            bounds = new int[length + lineCount + 1];
+            edges = new float[length + lineCount + 1];
+        }
+        if (widths.length < length) {
+            widths = new float[length];
+        }
+        if (clusters.length < length + 1) {
+            clusters = new int[length + 1];
+        }
+        CharacterUtils.graphemeBoundaries(text, clusters);
+
+        int used = 0;
+        int cluster = 0;
+        for (int line = 0; line < lineCount; line++) {
+            final int start = layout.getLineStart(line);
+            int end = layout.getLineEnd(line);
+            if (end > start && text.charAt(end - 1) == '\n') {
+                end--;
+            }
+            lineTops[line] = layout.getLineTop(line);
+            lineFirsts[line] = used;
+            rtl[line] = layout.getParagraphDirection(line) == Layout.DIR_RIGHT_TO_LEFT;
+
+            paint.getTextWidths(text, start, end, widths);
+            float x = rtl[line] ? layout.getLineRight(line) : layout.getLineLeft(line);
+            int from = start;
+            while (from < end) {
+                while (clusters[cluster] <= from) {
+                    cluster++; // Stops at the text length at the latest
+                }
+                final int to = Math.min(clusters[cluster], end);
+                bounds[used] = from;
+                edges[used++] = x;
+                float width = 0;
+                for (int offset = from; offset < to; offset++) {
+                    width += widths[offset - start];
+                }
+                x += rtl[line] ? -width : width;
+                from = to;
+            }
+            bounds[used] = end;
+            edges[used++] = x;
+        }
+        lineTops[lineCount] = lineCount > 0 ? layout.getLineBottom(lineCount - 1) : 0;
+        lineFirsts[lineCount] = used;
+    }
+
+    /**
+     * @param y vertical position relative to the layout
+     * @return The line at y (clamped to the first and last line), -1 if there are no lines
+     */
+    int lineForY(float y) {
+        if (lineCount == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (lineTops[middle] <= y) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param y vertical position relative to the layout
+     * @return True if y falls between the top of the first line and the bottom of the last
+     */
+    boolean isWithinLines(float y) {
+        return lineCount > 0 && y >= lineTops[0] && y < lineTops[lineCount];
+    }
+
+    /**
+     * @param line a line from lineForY()
+     * @param x horizontal position relative to the layout
+     * @return The offset of the cluster boundary closest to x, like a cursor would land on
+     */
+    int offsetForX(int line, float x) {
+        final int cluster = clusterForX(line, x, true);
+        final int end = lineFirsts[line + 1] - 1;
+        if (cluster >= end) {
+            return bounds[end];
+        }
+        final float leading = edges[cluster];
+        final float trailing = edges[cluster + 1];
+        return Math.abs(x - leading) <= Math.abs(x - trailing) ? bounds[cluster] : bounds[cluster + 1];
+    }
+
+    /**
+     * @param line a line from lineForY()
+     * @param x horizontal position relative to the layout
+     * @param clamp True to clamp to the line's first/last cluster when x is outside the line
+     * @return The offset of the cluster drawn under x, or -1 if x is outside the line and not clamped
+     */
+    int characterForX(int line, float x, boolean clamp) {
+        final int cluster = clusterForX(line, x, clamp);
+        return cluster < 0 ? -1 : bounds[cluster];
+    }
+
+    /**
+     * @return Index in bounds of the cluster under x, the line's end when clamped past it, or
+     * -1 if x is outside the line and not clamped
+     */
+    private int clusterForX(int line, float x, boolean clamp) {
+        final int first = lineFirsts[line];
+        final int end = lineFirsts[line + 1] - 1;
+        if (first == end) {
+            return clamp ? first : -1;
+        }
+        final boolean reversed = rtl[line];
+        final float leading = edges[first];
+        final float trailing = edges[end];
+        if (reversed ? (x > leading || x <= trailing) : (x < leading || x >= trailing)) {
+            if (!clamp) {
+                return -1;
+            }
+            return (reversed ? x > leading : x < leading) ? first : end;
+        }
+        // Last cluster whose leading edge is at or before x (after, for right to left lines)
+        int low = first;
+        int high = end - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            final float edge = edges[middle];
+            if (reversed ? edge >= x : edge <= x) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.LruCache;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class TextStyle {
+
+    /**
+     * Fits are shared by every drawable with the style, so there's room for more of them
+     */
+    private static final int FIT_CACHE_SIZE = 32;
+
+    private static final WeakHashMap<TextStyle, WeakReference<TextStyle>> interned = new WeakHashMap<>();
+
+    private final Typeface typeface;
+    private final float textSize;
+    private final int color;
+    private final Paint.Style style;
+    private final boolean bold;
+    private final int shadowColor;
+    private final float shadowRadius;
+    private final int hash;
+
+    private LruCache<TextDrawable.FitKey, Float> fitCache;
+
+    private TextStyle(Builder builder) {
+        this.typeface = builder.typeface;
+        this.textSize = builder.textSize;
+        this.color = builder.color;
+        this.style = builder.style;
+        this.bold = builder.bold;
+        this.shadowColor = builder.shadowColor;
+        this.shadowRadius = builder.shadowRadius;
+
+        int hash = typeface == null ? 0 : System.identityHashCode(typeface);
+        hash = 31 * hash + Float.floatToIntBits(textSize);
+        hash = 31 * hash + color;
+        hash = 31 * hash + style.hashCode();
+        hash = 31 * hash + (bold ? 1 : 0);
+        hash = 31 * hash + shadowColor;
+        this.hash = 31 * hash + Float.floatToIntBits(shadowRadius);
+    }
+
+    /**
+     * @return The one instance equal to the style, so styles can be compared by reference
+     */
+    private static TextStyle intern(TextStyle style) {
+        synchronized (interned) {
+            final WeakReference<TextStyle> reference = interned.get(style);
+            final TextStyle existing = reference == null ? null : reference.get();
+            if (existing != null) {
+                return existing;
+            }
+            interned.put(style, new WeakReference<>(style));
+            return style;
+        }
+    }
+
+    public Typeface getTypeface() {
+        return typeface;
+    }
+
+    public float getTextSize() {
+        return textSize;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public Paint.Style getStyle() {
+        return style;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    /**
+     * @return The shadow color, 0 for no shadow
+     */
+    public int getShadowColor() {
+        return shadowColor;
+    }
+
+    public float getShadowRadius() {
+        return shadowRadius;
+    }
+
+    /**
+     * Auto-fit results only depend on the text, the bounds, the size range, and how the glyphs
+     * measure, so every drawable with this style shares them.
+     */
+    synchronized LruCache<TextDrawable.FitKey, Float> fitCache() {
+        if (fitCache == null) {
+            fitCache = new LruCache<>(FIT_CACHE_SIZE);
+        }
+        return fitCache;
+    }
+
+    /**
+     * @param other another style, may be null
+     * @return True if text measures the same with both styles (same typeface, size, and boldness)
+     */
+    boolean measuresLike(TextStyle other) {
+        return measuresLike(other, false);
+    }
+
+    /**
+     * @param other another style, may be null
+     * @param ignoreSize True when auto-fit picks the size, so only the typeface and boldness count
+     * @return True if text measures the same with both styles
+     */
+    boolean measuresLike(TextStyle other, boolean ignoreSize) {
+        return other != null && typeface == other.typeface && bold == other.bold
+                && (ignoreSize || textSize == other.textSize);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TextStyle)) {
+            return false;
+        }
+        final TextStyle other = (TextStyle) o;
+        return hash == other.hash && measuresLike(other) && color == other.color
+                && style == other.style && shadowColor == other.shadowColor
+                && shadowRadius == other.shadowRadius;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Builds TextStyles. Every style built is interned, so building the same style twice gives
+     * back the same instance and drawables sharing it share its caches too.
+     */
+    public static final class Builder {
+
+        private Typeface typeface;
+        private float textSize;
+        private int color = Color.BLACK;
+        private Paint.Style style = Paint.Style.FILL;
+        private boolean bold;
+        private int shadowColor;
+        private float shadowRadius = BaseDrawable.DEFAULT_SHADOW_RADIUS;
+
+        public Builder() {
+        }
+
+        /**
+         * @param base style to start from, handy for variations of a theme
+         */
+        public Builder(TextStyle base) {
+            typeface = base.typeface;
+            textSize = base.textSize;
+            color = base.color;
+            style = base.style;
+            bold = base.bold;
+            shadowColor = base.shadowColor;
+            shadowRadius = base.shadowRadius;
+        }
+
+        public Builder setTypeface(Typeface typeface) {
+            this.typeface = typeface;
+            return this;
+        }
+
+        public Builder setTextSize(float textSize) {
+            this.textSize = textSize;
+            return this;
+        }
+
+        public Builder setColor(int color) {
+            this.color = color;
+            return this;
+        }
+
+        public Builder setStyle(Paint.Style style) {
+            this.style = style == null ? Paint.Style.FILL : style;
+            return this;
+        }
+
+        public Builder setBold(boolean bold) {
+            this.bold = bold;
+            return this;
+        }
+
+        /**
+         * @param color the shadow color, 0 for no shadow
+         * @param radius how far the shadow blurs out
+         */
+        public Builder setShadow(int color, float radius) {
+            this.shadowColor = color;
+            this.shadowRadius = radius;
+            return this;
+        }
+
+        /**
+         * @return The interned style
+         */
+        public TextStyle build() {
+            return intern(new TextStyle(this));
+        }
+    }
+
+}
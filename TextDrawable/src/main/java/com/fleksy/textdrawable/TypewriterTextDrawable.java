@@ -0,0 +1,66 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class TypewriterTextDrawable extends CharacterAnimationDrawable {
+
+    /**
+     * Backspacing is quicker than typing
+     */
+    private static final float DELETE_SPEEDUP = 2;
+
+    /**
+     * Characters that go away are backspaced first, last one first, then the new ones are typed
+     * out one at a time. Only characters that change take any time, the ones that stay are
+     * already in place.
+     *
+     * @param msPerChar how long (ms) each character takes to get typed
+     */
+    public TypewriterTextDrawable(float msPerChar) {
+        super(msPerChar);
+    }
+
+    TypewriterTextDrawable(float msPerChar, TextPaint paint) {
+        super(msPerChar, paint);
+    }
+
+    /**
+     * @param count unused, only the characters that change count
+     * @return How long (ms) backspacing and typing take together
+     */
+    @Override
+    protected long getDuration(int count) {
+        return (long) Math.ceil(deletingTime() + msPerChar * animation.incoming);
+    }
+
+    /**
+     * @return How long (ms) backspacing takes, typing starts after
+     */
+    private float deletingTime() {
+        return msPerChar / DELETE_SPEEDUP * animation.outgoing;
+    }
+
+    @Override
+    protected float moveFraction() {
+        return 1; // Characters that stay are already where they belong, typewriters don't slide
+    }
+
+    @Override
+    protected void outgoing(int index, Glyph glyph) {
+        if (getPlayTime() >= msPerChar / DELETE_SPEEDUP * (animation.oldRanks[index] + 1)) {
+            glyph.alpha = 0; // Backspaced
+        }
+    }
+
+    @Override
+    protected void incoming(int index, Glyph glyph) {
+        if (getPlayTime() < deletingTime() + msPerChar * (animation.ranks[index] + 1)) {
+            glyph.alpha = 0; // Not typed yet
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.fleksy.textdrawable;
+
+import java.util.ArrayList;
+
+/**
+ * Created by Fleksy.
+ * Author Greyski.
+ */
+public final class TypingTrace {
+
+    /**
+     * The text was set without animating
+     */
+    public static final int SET_TEXT = 0;
+
+    /**
+     * The text was animated into
+     */
+    public static final int ANIMATE_TEXT = 1;
+
+    private final ArrayList<Event> events = new ArrayList<>();
+    private long firstTime = -1;
+
+    /**
+     * A record of every setText()/animateText() call made on a drawable and when, for replaying
+     * real typing (overlapping animations, backspaces, language switches and all) in benchmarks.
+     * Hand it to AnimationTextDrawable.setTypingTrace() to record, then serialize() it.
+     */
+    public TypingTrace() {
+    }
+
+    /**
+     * @param time when the text was set (ms), any clock works as long as it's the same throughout
+     * @param text the text that was set
+     */
+    public void recordSetText(long time, CharSequence text) {
+        record(time, SET_TEXT, text, false);
+    }
+
+    /**
+     * @param time when the animation started (ms), any clock works as long as it's the same throughout
+     * @param text the text animated into
+     * @param rtlLanguage the RTL flag passed to animateText()
+     */
+    public void recordAnimateText(long time, CharSequence text, boolean rtlLanguage) {
+        record(time, ANIMATE_TEXT, text, rtlLanguage);
+    }
+
+    private synchronized void record(long time, int type, CharSequence text, boolean rtlLanguage) {
+        if (firstTime < 0) {
+            firstTime = time;
+        }
+        events.add(new Event(Math.max(0, time - firstTime), type,
+                text == null ? "" : text.toString(), rtlLanguage));
+    }
+
+    /**
+     * @return How many calls have been recorded
+     */
+    public synchronized int size() {
+        return events.size();
+    }
+
+    /**
+     * @param index which call, in the order they were made
+     * @return The recorded call
+     */
+    public synchronized Event get(int index) {
+        return events.get(index);
+    }
+
+    /**
+     * @return How long (ms) from the first recorded call to the last
+     */
+    public synchronized long getDuration() {
+        return events.isEmpty() ? 0 : events.get(events.size() - 1).time;
+    }
+
+    /**
+     * Writes the trace out as text, one call per line, to be saved as a test fixture.
+     *
+     * @return the trace in the format parse() reads
+     */
+    public synchronized String serialize() {
+        final StringBuilder out = new StringBuilder();
+        for (int i = 0; i < events.size(); i++) {
+            final Event event = events.get(i);
+            out.append(event.time).append('\t')
+                    .append(event.type == ANIMATE_TEXT ? (event.rtlLanguage ? "R" : "A") : "S").append('\t');
+            escape(event.text, out);
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Reads a trace written by serialize().
+     *
+     * @param serialized the serialized trace
+     * @return the trace
+     * @throws IllegalArgumentException if a line isn't in the serialized format
+     */
+    public static TypingTrace parse(String serialized) {
+        final TypingTrace trace = new TypingTrace();
+        int start = 0;
+        while (start < serialized.length()) {
+            int end = serialized.indexOf('\n', start);
+            end = end < 0 ? serialized.length() : end;
+            if (end > start) {
+                final int firstTab = serialized.indexOf('\t', start);
+                final int secondTab = firstTab < 0 ? -1 : serialized.indexOf('\t', firstTab + 1);
+                if (secondTab < 0 || secondTab > end || secondTab != firstTab + 2) {
+                    throw new IllegalArgumentException("Malformed trace line: " + serialized.substring(start, end));
+                }
+                final long time = Long.parseLong(serialized.substring(start, firstTab));
+                final String text = unescape(serialized, secondTab + 1, end);
+                final char type = serialized.charAt(firstTab + 1);
+                if (type == 'S') {
+                    trace.recordSetText(time, text);
+                } else if (type == 'A' || type == 'R') {
+                    trace.recordAnimateText(time, text, type == 'R');
+                } else {
+                    throw new IllegalArgumentException("Unknown trace event type: " + type);
+                }
+            }
+            start = end + 1;
+        }
+        return trace;
+    }
+
+    private static void escape(String text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\\') {
+                out.append("\\\\");
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else if (c == '\t') {
+                out.append("\\t");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String line, int start, int end) {
+        final StringBuilder text = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                c = line.charAt(++i);
+                c = c == 'n' ? '\n' : c == 't' ? '\t' : c;
+            }
+            text.append(c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * One recorded call
+     */
+    public static final class Event {
+
+        /**
+         * When the call was made (ms), relative to the first call of the trace
+         */
+        public final long time;
+
+        /**
+         * SET_TEXT or ANIMATE_TEXT
+         */
+        public final int type;
+
+        public final String text;
+        public final boolean rtlLanguage;
+
+        Event(long time, int type, String text, boolean rtlLanguage) {
+            this.time = time;
+            this.type = type;
+            this.text = text;
+            this.rtlLanguage = rtlLanguage;
+        }
+    }
+
+}
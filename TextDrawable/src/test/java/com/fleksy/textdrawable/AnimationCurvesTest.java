@@ -0,0 +1,174 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+import android.view.View;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the engines frame by frame with setPlayTime() and checks what their curves ask for.
+ * Clusters are numbered the way prepareAnimate() sees them: the old text's for outgoing(),
+ * the new text's for incoming().
+ */
+public class AnimationCurvesTest {
+
+    private static final float MS_PER_CHAR = 100;
+    private static final int OPAQUE = CharacterUtils.MAX_ARGB;
+
+    private final CharacterAnimationDrawable.Glyph glyph = new CharacterAnimationDrawable.Glyph();
+
+    /**
+     * 3 new clusters and a default duration of 100 + 2 * 5 ms, new clusters start 5ms apart
+     */
+    private static final float DURATION = 110;
+    private static final float TEXT_SIZE = 40;
+
+    @Test
+    public void everyEngine_startsOnTheOldTextAndEndsOnTheNew() throws Exception {
+        final CharacterAnimationDrawable[] engines = {
+                new ScaleTextDrawable(MS_PER_CHAR, new TextPaint()),
+                new FadeTextDrawable(MS_PER_CHAR, new TextPaint()),
+                new SlideUpTextDrawable(MS_PER_CHAR, new TextPaint()),
+                new TypewriterTextDrawable(MS_PER_CHAR, new TextPaint()),
+                new EvaporateTextDrawable(MS_PER_CHAR, new TextPaint())};
+        for (CharacterAnimationDrawable drawable : engines) {
+            final String name = drawable.getClass().getSimpleName();
+            animate(drawable, "abcdefgh", "xyz"); // A longer old text has to be gone by the end too
+            drawable.setPlayTime(0);
+            for (int i = 0; i < 8; i++) {
+                assertEquals(name + " old " + i, OPAQUE, outgoing(drawable, i).alpha);
+            }
+            assertEquals(name, 0, incoming(drawable, 0).alpha);
+
+            drawable.setPlayTime(Float.MAX_VALUE); // Clamped to the end
+            for (int i = 0; i < 8; i++) {
+                assertEquals(name + " old " + i, 0, outgoing(drawable, i).alpha);
+            }
+            for (int i = 0; i < 3; i++) {
+                final CharacterAnimationDrawable.Glyph glyph = incoming(drawable, i);
+                assertEquals(name + " new " + i, OPAQUE, glyph.alpha);
+                assertEquals(name, 1, glyph.scale, 0);
+                assertEquals(name, 0, glyph.offsetX, 0);
+                assertEquals(name, 0, glyph.offsetY, 0);
+            }
+        }
+    }
+
+    @Test
+    public void scale_growsInAndShrinksOut() throws Exception {
+        final ScaleTextDrawable drawable = animate(new ScaleTextDrawable(MS_PER_CHAR, new TextPaint()),
+                "xy", "abc");
+        drawable.setPlayTime(DURATION / 2);
+        assertEquals(OPAQUE / 2, outgoing(drawable, 1).alpha, 1);
+        assertEquals(0.5f, outgoing(drawable, 1).scale, 0.001f);
+        assertEquals(OPAQUE * 0.55f, incoming(drawable, 0).alpha, 1);
+        assertEquals(0.55f, incoming(drawable, 0).scale, 0.001f);
+        assertEquals(0.45f, incoming(drawable, 2).scale, 0.001f); // Staggered two clusters behind
+    }
+
+    @Test
+    public void fade_onlyTouchesAlpha() throws Exception {
+        final FadeTextDrawable drawable = animate(new FadeTextDrawable(MS_PER_CHAR, new TextPaint()),
+                "xy", "abc");
+        drawable.setPlayTime(DURATION / 2);
+        assertEquals(OPAQUE / 2, outgoing(drawable, 0).alpha, 1);
+        assertEquals(OPAQUE * 0.55f, incoming(drawable, 0).alpha, 1);
+        assertEquals(OPAQUE * 0.45f, incoming(drawable, 2).alpha, 1);
+        assertEquals(1, incoming(drawable, 2).scale, 0);
+        assertEquals(0, incoming(drawable, 2).offsetY, 0);
+    }
+
+    @Test
+    public void slideUp_movesUpByTheTextSize() throws Exception {
+        final SlideUpTextDrawable drawable = animate(new SlideUpTextDrawable(MS_PER_CHAR, new TextPaint()),
+                "xy", "abc");
+        drawable.setPlayTime(DURATION / 2);
+        assertEquals(-TEXT_SIZE / 2, outgoing(drawable, 0).offsetY, 0.01f); // Halfway up and out
+        assertEquals(OPAQUE / 2, outgoing(drawable, 0).alpha, 1);
+        assertEquals(TEXT_SIZE * 0.45f, incoming(drawable, 0).offsetY, 0.01f); // Coming up from below
+        assertEquals(TEXT_SIZE * 0.55f, incoming(drawable, 2).offsetY, 0.01f);
+    }
+
+    @Test
+    public void evaporate_staggersOutgoingToo() throws Exception {
+        final EvaporateTextDrawable drawable = animate(new EvaporateTextDrawable(MS_PER_CHAR, new TextPaint()),
+                "xy", "abc");
+        drawable.setPlayTime(DURATION / 2);
+        final CharacterAnimationDrawable.Glyph first = outgoing(drawable, 0);
+        assertEquals(OPAQUE * 0.45f, first.alpha, 1);
+        assertEquals(1 - 0.55f / 2, first.scale, 0.001f);
+        assertEquals(-TEXT_SIZE * 0.55f / 2, first.offsetY, 0.01f);
+        assertEquals(OPAQUE * 0.5f, outgoing(drawable, 1).alpha, 1); // 5ms behind the first
+        assertEquals(TEXT_SIZE * 0.45f / 2, incoming(drawable, 0).offsetY, 0.01f);
+    }
+
+    @Test
+    public void typewriter_typesOnlyChangedClustersAfterBackspacing() throws Exception {
+        // c and a stay, b is backspaced, r and t are typed
+        final TypewriterTextDrawable drawable = animate(typewriter(), "cab", "cart");
+        // One backspace at double speed, then two characters typed
+        assertEquals(250, drawable.getDuration(4));
+
+        drawable.setPlayTime(0);
+        assertEquals(OPAQUE, outgoing(drawable, 2).alpha);
+        assertEquals(0, incoming(drawable, 2).alpha);
+        drawable.setPlayTime(49);
+        assertEquals(OPAQUE, outgoing(drawable, 2).alpha);
+        drawable.setPlayTime(50);
+        assertEquals(0, outgoing(drawable, 2).alpha);
+        drawable.setPlayTime(149);
+        assertEquals(0, incoming(drawable, 2).alpha);
+        drawable.setPlayTime(150);
+        assertEquals(OPAQUE, incoming(drawable, 2).alpha);
+        assertEquals(0, incoming(drawable, 3).alpha);
+        drawable.setPlayTime(250);
+        assertEquals(OPAQUE, incoming(drawable, 3).alpha);
+    }
+
+    @Test
+    public void typewriter_backspacesFromTheEndBeforeTyping() throws Exception {
+        final TypewriterTextDrawable drawable = animate(typewriter(), "abcd", "xy");
+        assertEquals(400, drawable.getDuration(2));
+
+        drawable.setPlayTime(50);
+        assertEquals(0, outgoing(drawable, 3).alpha);
+        assertEquals(OPAQUE, outgoing(drawable, 2).alpha);
+        drawable.setPlayTime(150);
+        assertEquals(0, outgoing(drawable, 1).alpha);
+        assertEquals(OPAQUE, outgoing(drawable, 0).alpha);
+        drawable.setPlayTime(200);
+        assertEquals(0, outgoing(drawable, 0).alpha);
+        assertEquals(0, incoming(drawable, 0).alpha); // Nothing typed while backspacing
+        drawable.setPlayTime(300);
+        assertEquals(OPAQUE, incoming(drawable, 0).alpha);
+        assertEquals(0, incoming(drawable, 1).alpha);
+        drawable.setPlayTime(400);
+        assertEquals(OPAQUE, incoming(drawable, 1).alpha);
+    }
+
+    private static TypewriterTextDrawable typewriter() {
+        return new TypewriterTextDrawable(MS_PER_CHAR, new TextPaint());
+    }
+
+    private static <T extends CharacterAnimationDrawable> T animate(T drawable, String from, String to) {
+        drawable.setTextSize(TEXT_SIZE);
+        drawable.setText(from);
+        drawable.animateText(to, false, new View(null));
+        return drawable;
+    }
+
+    private CharacterAnimationDrawable.Glyph outgoing(CharacterAnimationDrawable drawable, int cluster) {
+        glyph.reset();
+        drawable.outgoing(cluster, glyph);
+        return glyph;
+    }
+
+    private CharacterAnimationDrawable.Glyph incoming(CharacterAnimationDrawable drawable, int cluster) {
+        glyph.reset();
+        drawable.incoming(cluster, glyph);
+        return glyph;
+    }
+
+}
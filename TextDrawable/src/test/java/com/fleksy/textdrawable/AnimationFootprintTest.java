@@ -0,0 +1,71 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+import android.view.View;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Keeps drawables that never animate from paying for the animation. Measures what constructing
+ * a few hundred drawables allocates on top of plain TextDrawables, the way a keyboard full of
+ * keys and suggestion chips would. Runs on the plain JVM against the mockable android.jar, so
+ * only the Java side of every object is counted, which is exactly the part this library owns.
+ */
+public class AnimationFootprintTest {
+
+    private static final int DRAWABLES = 500;
+
+    /**
+     * What an idle animated drawable may cost on top of a TextDrawable, as a share of what the
+     * TextDrawable itself costs: an eighth, room for the few fields of the engine and the
+     * animation base class (about half that) but not for anything that grows with the text.
+     * Relative, so it holds whatever the JVM's object layout.
+     */
+    private static final long MAX_IDLE_OVERHEAD_DIVISOR = 8;
+
+    @Test
+    public void idleDrawable_carriesNoAnimationState() throws Exception {
+        final ScaleTextDrawable drawable = new ScaleTextDrawable(200, new TextPaint());
+        assertFalse(drawable.isAnimationAllocated());
+        drawable.animateText("hey", false, new View(null));
+        assertTrue(drawable.isAnimationAllocated());
+        drawable.releaseAnimation();
+        assertFalse(drawable.isAnimationAllocated());
+    }
+
+    @Test
+    public void idleDrawable_staysWithinFootprint() throws Exception {
+        Assume.assumeTrue("JVM doesn't track allocations", ThreadUsage.tracksAllocations());
+
+        final long plain = perInstance(false);
+        final long animated = perInstance(true);
+        assertTrue("idle ScaleTextDrawable costs " + (animated - plain) + " bytes more than a "
+                        + plain + " byte TextDrawable",
+                animated - plain <= plain / MAX_IDLE_OVERHEAD_DIVISOR);
+    }
+
+    /**
+     * @return Bytes allocated per drawable constructed, paints excluded
+     */
+    private static long perInstance(boolean animated) {
+        final TextPaint[] paints = new TextPaint[DRAWABLES];
+        for (int i = 0; i < DRAWABLES; i++) {
+            paints[i] = new TextPaint();
+        }
+        final TextDrawable[] drawables = new TextDrawable[DRAWABLES];
+        construct(drawables, paints, animated); // Warm up, class loading allocates too
+        final long before = ThreadUsage.allocatedBytes();
+        construct(drawables, paints, animated);
+        return (ThreadUsage.allocatedBytes() - before) / DRAWABLES;
+    }
+
+    private static void construct(TextDrawable[] drawables, TextPaint[] paints, boolean animated) {
+        for (int i = 0; i < DRAWABLES; i++) {
+            drawables[i] = animated ? new ScaleTextDrawable(200, paints[i]) : new TextDrawable(paints[i]);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs on Robolectric, auto-fit only kicks in once the drawable has real bounds. Every test
+ * fits through a style of its own, so its fit cache shows exactly when a fit was looked up.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class AutoFitThresholdTest {
+
+    private static final float MIN_SIZE = 8;
+    private static final float MAX_SIZE = 60;
+    private static final String TEXT = "fit me in here";
+    private static final int HEIGHT = 50;
+
+    @Test
+    public void setBounds_keepsTheSizeInsideTheBand() throws Exception {
+        final TextStyle style = new TextStyle.Builder().setTextSize(102).build();
+        final TextDrawable drawable = fitting(style, 200);
+        final float fitted = drawable.getTextSize();
+        assertEquals(fit(200, HEIGHT), fitted, 0);
+        final int misses = style.fitCache().missCount();
+
+        final int band = TextDrawable.DEFAULT_AUTO_FIT_THRESHOLD - 1;
+        drawable.setBounds(0, 0, 200 + band, HEIGHT);
+        assertEquals(fitted, drawable.getTextSize(), 0);
+        drawable.setBounds(0, 0, 200 - band, HEIGHT + band);
+        assertEquals(fitted, drawable.getTextSize(), 0);
+        assertEquals("nothing was fitted", misses, style.fitCache().missCount());
+    }
+
+    @Test
+    public void setBounds_refitsPastTheBand() throws Exception {
+        final TextStyle style = new TextStyle.Builder().setTextSize(103).build();
+        final TextDrawable drawable = fitting(style, 200);
+        int misses = style.fitCache().missCount();
+
+        final int band = TextDrawable.DEFAULT_AUTO_FIT_THRESHOLD;
+        drawable.setBounds(0, 0, 200 + band, HEIGHT);
+        assertEquals(++misses, style.fitCache().missCount());
+        assertEquals(fit(200 + band, HEIGHT), drawable.getTextSize(), 0);
+
+        drawable.setBounds(0, 0, 300, HEIGHT);
+        assertEquals(++misses, style.fitCache().missCount());
+        assertEquals(fit(300, HEIGHT), drawable.getTextSize(), 0);
+    }
+
+    @Test
+    public void setBounds_smallChangesAddUpUntilTheyLeaveTheBand() throws Exception {
+        final TextStyle style = new TextStyle.Builder().setTextSize(104).build();
+        final TextDrawable drawable = fitting(style, 200);
+        final float fitted = drawable.getTextSize();
+        final int misses = style.fitCache().missCount();
+
+        drawable.setBounds(0, 0, 202, HEIGHT);
+        assertEquals(fitted, drawable.getTextSize(), 0);
+        drawable.setBounds(0, 0, 204, HEIGHT); // Measured from the last fit, not the last bounds
+        assertEquals(misses + 1, style.fitCache().missCount());
+        assertEquals(fit(204, HEIGHT), drawable.getTextSize(), 0);
+    }
+
+    @Test
+    public void setAutoFitThreshold_zeroRefitsOnEveryChange() throws Exception {
+        final TextStyle style = new TextStyle.Builder().setTextSize(105).build();
+        final TextDrawable drawable = fitting(style, 200);
+        drawable.setAutoFitThreshold(0);
+        final int misses = style.fitCache().missCount();
+
+        drawable.setBounds(0, 0, 201, HEIGHT);
+        assertEquals(misses + 1, style.fitCache().missCount());
+        assertEquals(fit(201, HEIGHT), drawable.getTextSize(), 0);
+    }
+
+    private static TextDrawable fitting(TextStyle style, int width) {
+        final TextDrawable drawable = new TextDrawable(TEXT);
+        drawable.setAutoFit(MIN_SIZE, MAX_SIZE);
+        drawable.setTextStyle(style);
+        drawable.setBounds(0, 0, width, HEIGHT);
+        return drawable;
+    }
+
+    /**
+     * @return The size the text fits at in the bounds, fitted from scratch
+     */
+    private static float fit(int width, int height) {
+        return TextDrawable.fitTextSize(new TextPaint(), TEXT, width, height, MIN_SIZE, MAX_SIZE);
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Typeface;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fits labels against a monospace check (every char as wide as the text size) so the right
+ * answers are easy to work out by hand.
+ */
+public class BatchAutoScalerTest {
+
+    private static final float MIN = 4;
+    private static final float MAX = 40;
+
+    @Test
+    public void fitEntry_settlesForUniformSizeThatFits() throws Exception {
+        final CountingCheck check = new CountingCheck();
+        final AtomicInteger uniform = uniform(20);
+        final float size = BatchAutoScaler.fitEntry(new BatchAutoScaler.Entry("ab", 100, 100),
+                null, check, uniform, MIN, MAX, false);
+        assertEquals(20, size, 0);
+        assertEquals(1, check.calls.get()); // A single check, no search above it
+        assertEquals(20, Float.intBitsToFloat(uniform.get()), 0);
+    }
+
+    @Test
+    public void fitEntry_lowersUniformSize() throws Exception {
+        final AtomicInteger uniform = uniform(20);
+        final float size = BatchAutoScaler.fitEntry(new BatchAutoScaler.Entry("abcde", 50, 100),
+                null, new CountingCheck(), uniform, MIN, MAX, false);
+        assertEquals(10, size, 0.5f);
+        assertEquals(size, Float.intBitsToFloat(uniform.get()), 0);
+    }
+
+    @Test
+    public void fitEntry_searchesAboveUniformSizeForEach() throws Exception {
+        final AtomicInteger uniform = uniform(10);
+        final float size = BatchAutoScaler.fitEntry(new BatchAutoScaler.Entry("ab", 60, 100),
+                null, new CountingCheck(), uniform, MIN, MAX, true);
+        assertEquals(30, size, 0.5f);
+        assertEquals(10, Float.intBitsToFloat(uniform.get()), 0); // Fitting above it changes nothing
+    }
+
+    @Test
+    public void fit_findsSmallestFitAcrossLabels() throws Exception {
+        final List<BatchAutoScaler.Entry> entries = new ArrayList<>();
+        entries.add(new BatchAutoScaler.Entry("q", 60, 100));     // 40 (capped)
+        entries.add(new BatchAutoScaler.Entry("shift", 60, 100)); // 12
+        entries.add(new BatchAutoScaler.Entry("", 60, 100));
+        entries.add(new BatchAutoScaler.Entry("enter", 100, 15)); // 15, height bound
+        entries.add(new BatchAutoScaler.Entry("toolongtofit", 10, 100)); // Nothing fits, MIN
+        final BatchAutoScaler scaler = new BatchAutoScaler(3, new CountingCheck());
+        try {
+            final BatchAutoScaler.Result uniform = scaler.fit(entries, null, MIN, MAX);
+            assertEquals(MIN, uniform.uniformSize, 0);
+            assertArrayEquals(new float[]{MIN, MIN, MIN, MIN, MIN}, uniform.sizes, 0);
+
+            final BatchAutoScaler.Result each = scaler.fitEach(entries, null, MIN, MAX);
+            assertEquals(MIN, each.uniformSize, 0);
+            assertArrayEquals(new float[]{40, 12, 40, 15, MIN}, each.sizes, 0.5f);
+        } finally {
+            scaler.shutdown();
+        }
+    }
+
+    @Test
+    public void fit_sameBatchGivesSameSizesEveryRun() throws Exception {
+        final List<BatchAutoScaler.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            // Widths that don't land on the grid, so where a search starts would show
+            entries.add(new BatchAutoScaler.Entry("label" + i, 61 + i * 7.3f, 100));
+        }
+        final BatchAutoScaler scaler = new BatchAutoScaler(4, new ShufflingCheck());
+        try {
+            final BatchAutoScaler.Result uniform = scaler.fit(entries, null, MIN, MAX);
+            final BatchAutoScaler.Result each = scaler.fitEach(entries, null, MIN, MAX);
+            for (int run = 0; run < 50; run++) {
+                final BatchAutoScaler.Result uniformAgain = scaler.fit(entries, null, MIN, MAX);
+                assertEquals(uniform.uniformSize, uniformAgain.uniformSize, 0);
+                assertArrayEquals(uniform.sizes, uniformAgain.sizes, 0);
+
+                final BatchAutoScaler.Result eachAgain = scaler.fitEach(entries, null, MIN, MAX);
+                assertEquals(each.uniformSize, eachAgain.uniformSize, 0);
+                assertArrayEquals(each.sizes, eachAgain.sizes, 0);
+            }
+            assertEquals(uniform.uniformSize, each.uniformSize, 0);
+            for (int i = 0; i < entries.size(); i++) {
+                assertTrue(fits(entries.get(i), each.sizes[i]));
+                assertTrue(each.sizes[i] == MAX // Or its largest
+                        || !fits(entries.get(i), each.sizes[i] + BatchAutoScaler.STEP));
+            }
+        } finally {
+            scaler.shutdown();
+        }
+    }
+
+    private static AtomicInteger uniform(float size) {
+        return new AtomicInteger(Float.floatToIntBits(size));
+    }
+
+    private static boolean fits(BatchAutoScaler.Entry entry, float size) {
+        return entry.text.length() * size <= entry.width && size <= entry.height;
+    }
+
+    private static final class CountingCheck implements BatchAutoScaler.FitCheck {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public boolean fits(BatchAutoScaler.Entry entry, Typeface typeface, float size) {
+            calls.incrementAndGet();
+            return BatchAutoScalerTest.fits(entry, size);
+        }
+    }
+
+    /**
+     * Lets the other workers get ahead now and then, so labels get fit in a different order
+     */
+    private static final class ShufflingCheck implements BatchAutoScaler.FitCheck {
+
+        @Override
+        public boolean fits(BatchAutoScaler.Entry entry, Typeface typeface, float size) {
+            if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                Thread.yield();
+            }
+            return BatchAutoScalerTest.fits(entry, size);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Color;
+import android.text.BoringLayout;
+import android.text.Layout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs on Robolectric, so BoringLayout.isBoring() and both kinds of layout are the real thing.
+ * Only the StaticLayouts that actually get constructed are counted, nothing about which layout
+ * gets picked is stubbed out.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class BoringLayoutTest {
+
+    /**
+     * Typing a label one char at a time, then fixing it up, all on a single line
+     */
+    private static TypingTrace singleLineTrace() {
+        final TypingTrace trace = new TypingTrace();
+        final String label = "the quick brown";
+        long time = 0;
+        for (int i = 1; i <= label.length(); i++) {
+            trace.recordSetText(time += 45, label.substring(0, i));
+        }
+        trace.recordSetText(time += 90, "the quick brow");
+        trace.recordSetText(time += 90, "the quick fox");
+        return trace;
+    }
+
+    @Test
+    public void replay_boringLayoutSkipsStaticLayoutBuilds() throws Exception {
+        final TypingTrace trace = singleLineTrace();
+        final LayoutCountingDrawable boring = drawable(true);
+        final LayoutCountingDrawable plain = drawable(false);
+        replay(trace, boring);
+        replay(trace, plain);
+
+        assertEquals("every text change lays out again", trace.size(), plain.staticBuilds);
+        assertEquals("single lines never need a StaticLayout", 0, boring.staticBuilds);
+        assertTrue(boring.staticBuilds < plain.staticBuilds);
+    }
+
+    @Test
+    public void replay_lineBreaksStillBuildStaticLayouts() throws Exception {
+        final TypingTrace trace = singleLineTrace();
+        trace.recordSetText(trace.getDuration() + 100, "two\nlines");
+        final LayoutCountingDrawable boring = drawable(true);
+        replay(trace, boring);
+        assertEquals(1, boring.staticBuilds);
+    }
+
+    private static void replay(TypingTrace trace, TextDrawable drawable) {
+        for (int i = 0; i < trace.size(); i++) {
+            drawable.setText(trace.get(i).text);
+        }
+    }
+
+    private static LayoutCountingDrawable drawable(boolean boring) {
+        final LayoutCountingDrawable drawable = new LayoutCountingDrawable(boring);
+        drawable.setBounds(0, 0, 1000, 100); // Wide enough for every line of the trace
+        drawable.staticBuilds = 0; // Only count what the trace builds
+        return drawable;
+    }
+
+    /**
+     * Counts the StaticLayouts it really constructs. Without boring layouts everything goes
+     * through a StaticLayout like it used to.
+     */
+    private static final class LayoutCountingDrawable extends TextDrawable {
+
+        final boolean boring;
+        int staticBuilds;
+
+        LayoutCountingDrawable(boolean boring) {
+            super("", null, 20, Color.WHITE);
+            this.boring = boring;
+        }
+
+        @Override
+        BoringLayout.Metrics boringMetrics(CharSequence text, int width) {
+            return boring ? super.boringMetrics(text, width) : null;
+        }
+
+        @Override
+        Layout makeStaticLayout(CharSequence text, int width) {
+            staticBuilds++;
+            return super.makeStaticLayout(text, width);
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.fleksy.textdrawable;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CacheRegistryTest {
+
+    @Test
+    public void register_trimsToBudget() throws Exception {
+        final CacheRegistry registry = new CacheRegistry();
+        final FakeCache cache = new FakeCache(1000);
+        registry.register("test-budget", CacheRegistry.PRIORITY_LOW, 600, cache);
+        assertEquals(600, cache.size);
+        assertTrue(registry.setBudget("test-budget", 100));
+        assertEquals(100, cache.size);
+        assertEquals(100, cache.budget);
+
+        final CacheRegistry.Stats stats = find(registry.getStats(), "test-budget");
+        assertEquals(2, stats.trimCount);
+        assertEquals(900, stats.trimmedBytes);
+        assertEquals(1f, stats.getOccupancy(), 0);
+    }
+
+    @Test
+    public void onTrimMemory_trimsLowestPriorityFirst() throws Exception {
+        final CacheRegistry registry = new CacheRegistry();
+        final FakeCache low = new FakeCache(800);
+        final FakeCache normal = new FakeCache(800);
+        final FakeCache high = new FakeCache(800);
+        registry.register("test-low", CacheRegistry.PRIORITY_LOW, 1000, low);
+        registry.register("test-normal", CacheRegistry.PRIORITY_NORMAL, 1000, normal);
+        registry.register("test-high", CacheRegistry.PRIORITY_HIGH, 1000, high);
+        registry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(400, low.size);
+        assertEquals(800, normal.size);
+
+        registry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, low.size);
+        assertEquals(400, normal.size);
+        assertEquals(800, high.size);
+
+        registry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, normal.size);
+        assertEquals(0, high.size);
+    }
+
+    @Test
+    public void pressureOf_ordersTrimLevels() throws Exception {
+        assertEquals(1, CacheRegistry.pressureOf(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(2, CacheRegistry.pressureOf(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(3, CacheRegistry.pressureOf(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(2, CacheRegistry.pressureOf(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(3, CacheRegistry.pressureOf(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(4, CacheRegistry.pressureOf(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    private static CacheRegistry.Stats find(List<CacheRegistry.Stats> stats, String name) {
+        for (CacheRegistry.Stats stat : stats) {
+            if (stat.name.equals(name)) {
+                return stat;
+            }
+        }
+        throw new AssertionError("No stats for " + name);
+    }
+
+    private static final class FakeCache implements CacheRegistry.Cache {
+
+        long size;
+        long budget;
+
+        FakeCache(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            return size;
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return 0;
+        }
+
+        @Override
+        public void setBudgetBytes(long bytes) {
+            budget = bytes;
+        }
+
+        @Override
+        public void trimToBytes(long bytes) {
+            size = Math.min(size, bytes);
+        }
+    }
+
+}
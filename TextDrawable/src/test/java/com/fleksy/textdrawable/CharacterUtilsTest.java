@@ -0,0 +1,116 @@
+package com.fleksy.textdrawable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CharacterUtilsTest {
+
+    @Test
+    public void graphemeBoundaries_plainText() throws Exception {
+        final int[] bounds = new int[4];
+        assertEquals(3, CharacterUtils.graphemeBoundaries("abc", bounds));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, bounds);
+    }
+
+    @Test
+    public void graphemeBoundaries_keepsSurrogatePairsTogether() throws Exception {
+        final String text = "a\uD83D\uDE00b"; // a, grinning face, b
+        final int[] bounds = new int[text.length() + 1];
+        assertEquals(3, CharacterUtils.graphemeBoundaries(text, bounds));
+        assertEquals(1, bounds[1]);
+        assertEquals(3, bounds[2]);
+        assertEquals(4, bounds[3]);
+    }
+
+    @Test
+    public void graphemeBoundaries_keepsCombiningMarksTogether() throws Exception {
+        final String text = "e\u0301x"; // e + combining acute, x
+        final int[] bounds = new int[text.length() + 1];
+        assertEquals(2, CharacterUtils.graphemeBoundaries(text, bounds));
+        assertEquals(2, bounds[1]);
+        assertEquals(3, bounds[2]);
+    }
+
+    @Test
+    public void getAlignedText_reversesByCluster() throws Exception {
+        assertEquals("cba", CharacterUtils.getAlignedText("abc", true));
+        assertEquals("abc", CharacterUtils.getAlignedText("abc", false));
+        assertEquals("xe\u0301", CharacterUtils.getAlignedText("e\u0301x", true));
+        assertEquals("b\uD83D\uDE00a", CharacterUtils.getAlignedText("a\uD83D\uDE00b", true));
+    }
+
+    @Test
+    public void diff_matchesSharedClusters() throws Exception {
+        final String oldText = "cat";
+        final String newText = "act";
+        final int[] oldBounds = new int[4];
+        final int[] newBounds = new int[4];
+        final int oldCount = CharacterUtils.graphemeBoundaries(oldText, oldBounds);
+        final int newCount = CharacterUtils.graphemeBoundaries(newText, newBounds);
+        final int[] moveTo = new int[3];
+        final boolean[] stay = new boolean[3];
+
+        CharacterUtils.diff(oldText, oldBounds, oldCount, newText, newBounds, newCount, moveTo, stay);
+
+        assertArrayEquals(new int[]{1, 0, 2}, moveTo);
+        assertTrue(stay[0] && stay[1] && stay[2]);
+    }
+
+    @Test
+    public void diff_dropsMissingClusters() throws Exception {
+        final String oldText = "ab";
+        final String newText = "b";
+        final int[] oldBounds = new int[3];
+        final int[] newBounds = new int[2];
+        final int[] moveTo = new int[2];
+        final boolean[] stay = new boolean[1];
+
+        CharacterUtils.diff(oldText, oldBounds, CharacterUtils.graphemeBoundaries(oldText, oldBounds),
+                newText, newBounds, CharacterUtils.graphemeBoundaries(newText, newBounds), moveTo, stay);
+
+        assertEquals(-1, moveTo[0]);
+        assertEquals(0, moveTo[1]);
+        assertTrue(stay[0]);
+    }
+
+    @Test
+    public void diffLines_onlyDiffsChangedLines() throws Exception {
+        final String oldText = "ab\ncd\nef";
+        final String newText = "ab\nxd\nef";
+        final int[] oldBounds = new int[9];
+        final int[] newBounds = new int[9];
+        CharacterUtils.graphemeBoundaries(oldText, oldBounds);
+        CharacterUtils.graphemeBoundaries(newText, newBounds);
+        final int[] moveTo = new int[8];
+        final boolean[] stay = new boolean[8];
+        final int[] sameLine = new int[3];
+
+        CharacterUtils.diffLines(oldText, oldBounds, new int[]{0, 3, 6, 8}, 3,
+                newText, newBounds, new int[]{0, 3, 6, 8}, 3, moveTo, stay, sameLine);
+
+        assertArrayEquals(new int[]{0, 1, 2, -1, 4, 5, 6, 7}, moveTo);
+        assertArrayEquals(new int[]{0, -1, 2}, sameLine);
+        assertFalse(stay[3]);
+    }
+
+    @Test
+    public void diffLines_matchesLinesAroundAnInsertedLine() throws Exception {
+        final String oldText = "ab\nef";
+        final String newText = "ab\ncd\nef";
+        final int[] oldBounds = new int[6];
+        final int[] newBounds = new int[9];
+        CharacterUtils.graphemeBoundaries(oldText, oldBounds);
+        CharacterUtils.graphemeBoundaries(newText, newBounds);
+        final int[] moveTo = new int[5];
+        final boolean[] stay = new boolean[8];
+        final int[] sameLine = new int[3];
+
+        CharacterUtils.diffLines(oldText, oldBounds, new int[]{0, 3, 5}, 2,
+                newText, newBounds, new int[]{0, 3, 6, 8}, 3, moveTo, stay, sameLine);
+
+        assertArrayEquals(new int[]{0, 1, 2, 6, 7}, moveTo);
+        assertArrayEquals(new int[]{0, -1, 1}, sameLine);
+        assertFalse(stay[3] || stay[4] || stay[5]);
+    }
+}
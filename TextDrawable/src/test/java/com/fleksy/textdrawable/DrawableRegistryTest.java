@@ -0,0 +1,125 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs on Robolectric, the grid leans on Rect and LongSparseArray actually working. Cells are
+ * kept small so every drawable covers a bunch of them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class DrawableRegistryTest {
+
+    private static final int CELL = 32;
+
+    @Test
+    public void findAt_picksTheTopMostShownDrawable() throws Exception {
+        final DrawableRegistry<Box> registry = new DrawableRegistry<>(CELL);
+        final Box below = box(registry, 1, 0, 0, 100, 100);
+        final Box above = box(registry, 2, 50, 50, 150, 150);
+
+        assertSame(below, registry.findAt(25, 25));
+        assertSame(above, registry.findAt(75, 75));
+        assertSame(below, registry.findAt(75, 75, 1));
+        assertNull(registry.findAt(200, 200));
+        assertNull(registry.findAt(-1, 25));
+
+        above.setVisibility(false);
+        assertSame(below, registry.findAt(75, 75));
+        assertNull(registry.findAt(125, 125));
+    }
+
+    @Test
+    public void boundsChanges_moveDrawablesInTheGrid() throws Exception {
+        final DrawableRegistry<Box> registry = new DrawableRegistry<>(CELL);
+        final Box box = box(registry, 0, 0, 0, 40, 40);
+
+        box.setBounds(300, 300, 400, 400);
+        assertNull(registry.findAt(20, 20));
+        assertSame(box, registry.findAt(350, 350));
+
+        box.setBounds(0, 0, 0, 0); // Empty bounds can't be hit
+        assertNull(registry.findAt(0, 0));
+        assertNull(registry.findAt(350, 350));
+
+        box.setBounds(-100, -100, -10, -10); // Negative cells work too
+        assertSame(box, registry.findAt(-50, -50));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void remove_forgetsTheDrawable() throws Exception {
+        final DrawableRegistry<Box> registry = new DrawableRegistry<>(CELL);
+        final Box box = box(registry, 0, 0, 0, 100, 100);
+        registry.remove(box);
+        assertEquals(0, registry.size());
+        assertNull(registry.findAt(50, 50));
+
+        box.setBounds(10, 10, 90, 90); // No longer tracked, so nothing to update
+        assertNull(registry.findAt(50, 50));
+
+        final DrawableRegistry<Box> other = new DrawableRegistry<>(CELL);
+        other.add(box);
+        assertSame(box, other.findAt(50, 50));
+        try {
+            registry.add(box);
+            fail("A drawable can only be in one registry");
+        } catch (IllegalStateException expected) {
+            // Still tracked by the other registry
+        }
+        registry.remove(box); // Not ours to remove
+        assertSame(box, other.findAt(50, 50));
+    }
+
+    @Test
+    public void query_returnsEachDrawableOnceInDrawOrder() throws Exception {
+        final DrawableRegistry<Box> registry = new DrawableRegistry<>(CELL);
+        final Box first = box(registry, 0, 0, 0, 200, 200);
+        final Box second = box(registry, 0, 100, 0, 300, 100);
+        final Box hidden = box(registry, 0, 0, 0, 50, 50);
+        final Box outside = box(registry, 0, 500, 500, 600, 600);
+        hidden.setVisibility(false);
+        first.setBounds(150, 50, 250, 250); // Moving doesn't change the draw order
+
+        final List<Box> found = registry.query(new Rect(0, 0, 400, 400), new ArrayList<Box>());
+        assertEquals(2, found.size());
+        assertSame(first, found.get(0));
+        assertSame(second, found.get(1));
+
+        final List<Box> one = registry.query(new Rect(550, 550, 560, 560), new ArrayList<Box>());
+        assertEquals(1, one.size());
+        assertSame(outside, one.get(0));
+        assertTrue(registry.query(new Rect(10, 10, 10, 20), new ArrayList<Box>()).isEmpty());
+    }
+
+    private static Box box(DrawableRegistry<Box> registry, int id, int left, int top, int right, int bottom) {
+        final Box box = new Box();
+        box.setId(id);
+        box.setBounds(left, top, right, bottom);
+        registry.add(box);
+        return box;
+    }
+
+    private static final class Box extends BaseDrawable {
+
+        @Override
+        protected void createPath(Rect bounds) {
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.fleksy.textdrawable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs on Robolectric for the Choreographer. Frames are driven by calling doFrame() directly,
+ * with whatever cost the drawables would've added in between.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class FrameBudgetMonitorTest {
+
+    private static final long BUDGET_NANOS = 4000000;
+    private static final int RESTORE_FRAMES = 30;
+
+    private final List<Integer> changes = new ArrayList<>();
+
+    @Test
+    public void overBudgetFrames_dropQualityALevelAtATime() throws Exception {
+        final FrameBudgetMonitor monitor = monitor();
+        frame(monitor, BUDGET_NANOS * 2);
+        assertEquals(FrameBudgetMonitor.QUALITY_FULL, monitor.getQuality()); // One slow frame is fine
+        frame(monitor, BUDGET_NANOS * 2);
+        assertEquals(FrameBudgetMonitor.QUALITY_REDUCED, monitor.getQuality());
+        frame(monitor, BUDGET_NANOS * 2);
+        frame(monitor, BUDGET_NANOS * 2);
+        assertEquals(FrameBudgetMonitor.QUALITY_MINIMAL, monitor.getQuality());
+        frame(monitor, BUDGET_NANOS * 2);
+        frame(monitor, BUDGET_NANOS * 2);
+        assertEquals(FrameBudgetMonitor.QUALITY_MINIMAL, monitor.getQuality());
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void idleFrames_bringQualityBackUp() throws Exception {
+        final FrameBudgetMonitor monitor = monitor();
+        for (int i = 0; i < 4; i++) {
+            frame(monitor, BUDGET_NANOS * 2);
+        }
+        assertEquals(FrameBudgetMonitor.QUALITY_MINIMAL, monitor.getQuality());
+        assertTrue(monitor.isFrameScheduled()); // Keeps watching after the animation's gone
+
+        for (int i = 0; i < RESTORE_FRAMES; i++) {
+            idleFrame(monitor);
+        }
+        assertEquals(FrameBudgetMonitor.QUALITY_REDUCED, monitor.getQuality());
+        assertTrue(monitor.isFrameScheduled());
+        for (int i = 0; i < RESTORE_FRAMES - 1; i++) {
+            idleFrame(monitor);
+        }
+        assertEquals(FrameBudgetMonitor.QUALITY_REDUCED, monitor.getQuality());
+        idleFrame(monitor);
+        assertEquals(FrameBudgetMonitor.QUALITY_FULL, monitor.getQuality());
+        assertFalse(monitor.isFrameScheduled()); // Nothing left to restore, stop asking for frames
+        assertEquals(4, changes.size());
+    }
+
+    @Test
+    public void framesNearTheBudget_holdQualityWhereItIs() throws Exception {
+        final FrameBudgetMonitor monitor = monitor();
+        frame(monitor, BUDGET_NANOS * 2);
+        frame(monitor, BUDGET_NANOS * 2);
+        for (int i = 0; i < RESTORE_FRAMES * 2; i++) {
+            frame(monitor, BUDGET_NANOS * 3 / 4); // Under budget, but not by enough
+        }
+        assertEquals(FrameBudgetMonitor.QUALITY_REDUCED, monitor.getQuality());
+    }
+
+    private FrameBudgetMonitor monitor() {
+        final FrameBudgetMonitor monitor = new FrameBudgetMonitor(BUDGET_NANOS / 1000000f);
+        monitor.setOnQualityChangeListener(new FrameBudgetMonitor.OnQualityChangeListener() {
+            @Override
+            public void onQualityChanged(int oldQuality, int newQuality) {
+                assertEquals(1, Math.abs(newQuality - oldQuality));
+                changes.add(newQuality);
+            }
+        });
+        return monitor;
+    }
+
+    private static void frame(FrameBudgetMonitor monitor, long cost) {
+        monitor.addCost(cost);
+        monitor.doFrame(0);
+    }
+
+    private static void idleFrame(FrameBudgetMonitor monitor) {
+        assertTrue(monitor.isFrameScheduled());
+        monitor.doFrame(0);
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.fleksy.textdrawable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LevelOfDetailTest {
+
+    @Test
+    public void detailFor_skipsTinyAndTransparentGlyphs() throws Exception {
+        final LevelOfDetail lod = new LevelOfDetail(2, 8, 0);
+        assertEquals(LevelOfDetail.SKIP, lod.detailFor(1.5f, 255));
+        assertEquals(LevelOfDetail.SKIP, lod.detailFor(20, 4));
+        assertEquals(LevelOfDetail.FULL, lod.detailFor(2, 8));
+    }
+
+    @Test
+    public void detailFor_drawsPlaceholdersBetweenThresholds() throws Exception {
+        final LevelOfDetail lod = new LevelOfDetail(1, 1, 6);
+        assertEquals(LevelOfDetail.PLACEHOLDER, lod.detailFor(3, 255));
+        assertEquals(LevelOfDetail.FULL, lod.detailFor(6, 255));
+    }
+
+    @Test
+    public void detailFor_neverDrawsNothing() throws Exception {
+        assertEquals(LevelOfDetail.SKIP, LevelOfDetail.NONE.detailFor(0, 255));
+        assertEquals(LevelOfDetail.SKIP, LevelOfDetail.NONE.detailFor(12, 0));
+        assertEquals(LevelOfDetail.FULL, LevelOfDetail.NONE.detailFor(0.1f, 1));
+    }
+
+}
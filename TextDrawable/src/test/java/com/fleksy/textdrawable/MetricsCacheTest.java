@@ -0,0 +1,108 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Paint;
+import android.text.TextPaint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fonts are shared by everything that measures alike, and bad prewarm() arguments have to fail
+ * on the caller's thread, not inside the Future. Sizes are picked so no other test uses them.
+ */
+public class MetricsCacheTest {
+
+    @Test
+    public void font_isSharedByEverythingMeasuringAlike() throws Exception {
+        final MetricsCache.Font font = MetricsCache.font(null, 17, false, 1, 0, 0);
+        assertSame(font, MetricsCache.font(null, 17, false, 1, 0, 0));
+        assertNotSame(font, MetricsCache.font(null, 18, false, 1, 0, 0));
+        assertNotSame(font, MetricsCache.font(null, 17, true, 1, 0, 0));
+        assertNotSame(font, MetricsCache.font(null, 17, false, 1.5f, 0, 0));
+        assertNotSame(font, MetricsCache.font(null, 17, false, 1, 0.1f, 0));
+        assertNotSame(font, MetricsCache.font(null, 17, false, 1, 0, Paint.SUBPIXEL_TEXT_FLAG));
+        assertNotSame(font, MetricsCache.font(null, 17, false, 1, 0, Paint.LINEAR_TEXT_FLAG));
+        assertSame(font, MetricsCache.font(null, 17, false, 1, 0, Paint.ANTI_ALIAS_FLAG)); // Doesn't measure differently
+    }
+
+    @Test
+    public void baseline_measuresOnceWhileTheScaleAnimates() throws Exception {
+        final CountingPaint paint = new CountingPaint();
+        final TextDrawable drawable = new TextDrawable(paint);
+        drawable.setTextSize(21);
+        assertEquals(-13, drawable.getBaseline(), 0); // (ascent - descent) / 2, rounded
+        final int measures = paint.measures;
+        for (int i = 1; i <= 10; i++) {
+            drawable.setTextScale(1 + i / 10f);
+            assertEquals((int) (-13 / (1 + i / 10f)), drawable.getBaseline(), 0);
+        }
+        assertEquals(measures, paint.measures);
+
+        drawable.setTextSize(23); // A different font, which is measured again
+        assertEquals((int) (-14 / 2f), drawable.getBaseline(), 0);
+        assertEquals(measures + 1, paint.measures);
+    }
+
+    @Test
+    public void trim_dropsLeastRecentlyUsedFirst() throws Exception {
+        final CacheRegistry.Cache cache = MetricsCache.CACHE;
+        cache.trimToBytes(0);
+        assertEquals(0, cache.getSizeBytes());
+        final MetricsCache.Font older = MetricsCache.font(null, 19, false, 1, 0, 0);
+        final MetricsCache.Font newer = MetricsCache.font(null, 20, false, 1, 0, 0);
+        assertSame(older, MetricsCache.font(null, 19, false, 1, 0, 0)); // Now the most recently used
+        final long evictions = cache.getEvictionCount();
+
+        cache.trimToBytes(cache.getSizeBytes() - 1);
+        assertEquals(evictions + 1, cache.getEvictionCount());
+        assertSame(older, MetricsCache.font(null, 19, false, 1, 0, 0));
+        assertNotSame(newer, MetricsCache.font(null, 20, false, 1, 0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prewarm_rejectsMissingSizes() throws Exception {
+        TextDrawable.prewarm(null, null, "abc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prewarm_rejectsNonPositiveSizes() throws Exception {
+        new TextDrawable(new TextPaint()).prewarm(new float[]{12, 0}, "abc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prewarm_rejectsNaNSizes() throws Exception {
+        MetricsCache.prewarm(new TextPaint(), new float[]{Float.NaN}, "abc");
+    }
+
+    /**
+     * Ascent and descent that grow with the text size, counting how often they're asked for
+     */
+    private static final class CountingPaint extends TextPaint {
+
+        private float size;
+        int measures;
+
+        @Override
+        public void setTextSize(float size) {
+            this.size = size;
+        }
+
+        @Override
+        public float getTextSize() {
+            return size;
+        }
+
+        @Override
+        public float ascent() {
+            measures++;
+            return -size;
+        }
+
+        @Override
+        public float descent() {
+            return size / 4;
+        }
+    }
+
+}
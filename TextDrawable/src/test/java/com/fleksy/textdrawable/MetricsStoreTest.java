@@ -0,0 +1,123 @@
+package com.fleksy.textdrawable;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips the store through a real file. Keys are spread over the whole long range on
+ * purpose, negative ones included, since the records are sorted and searched as signed longs.
+ */
+public class MetricsStoreTest {
+
+    private static final String VERSION = "1.0";
+    private static final long FONT = 42;
+    private static final long[] KEYS = {Long.MIN_VALUE, -7, 0, 3, 1L << 40, -1L << 40, Long.MAX_VALUE, 12345};
+
+    @Test
+    public void save_sortsRecordsForBinarySearch() throws Exception {
+        final File file = tempFile();
+        final MetricsStore store = MetricsStore.open(file, VERSION);
+        for (int i = 0; i < KEYS.length; i++) {
+            store.put(FONT, KEYS[i], i, i * 2, i * 3);
+        }
+        assertTrue(store.save());
+
+        final ByteBuffer bytes = ByteBuffer.wrap(read(file));
+        final int count = bytes.getInt(16);
+        assertEquals(KEYS.length, count);
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            final long key = bytes.getLong(20 + i * 28 + 8);
+            assertTrue("record " + i + " out of order", key >= previous);
+            previous = key;
+        }
+
+        final MetricsStore reopened = MetricsStore.open(file, VERSION);
+        assertEquals(KEYS.length, reopened.size());
+        final int[] out = new int[3];
+        for (int i = 0; i < KEYS.length; i++) {
+            assertTrue(reopened.get(KEYS[i], out));
+            assertArrayEquals(new int[]{i, i * 2, i * 3}, out);
+        }
+        assertFalse(reopened.get(1, out));
+        assertFalse(reopened.get(Long.MAX_VALUE - 1, out));
+    }
+
+    @Test
+    public void open_ignoresStaleOrBrokenFiles() throws Exception {
+        final File file = tempFile();
+        final MetricsStore store = MetricsStore.open(file, VERSION);
+        store.put(FONT, 1, 1, 1, 1);
+        store.put(FONT, 2, 2, 2, 2);
+        assertTrue(store.save());
+        assertEquals(2, MetricsStore.open(file, VERSION).size());
+
+        assertEquals(0, MetricsStore.open(file, "2.0").size()); // Written by another version
+
+        final byte[] good = read(file);
+        final byte[] badMagic = good.clone();
+        badMagic[0] ^= 1;
+        write(file, badMagic);
+        assertEquals(0, MetricsStore.open(file, VERSION).size());
+
+        final byte[] truncated = new byte[good.length - 1];
+        System.arraycopy(good, 0, truncated, 0, truncated.length);
+        write(file, truncated);
+        assertEquals(0, MetricsStore.open(file, VERSION).size());
+
+        write(file, new byte[3]); // Not even a header
+        assertEquals(0, MetricsStore.open(file, VERSION).size());
+    }
+
+    @Test
+    public void put_staysWithinPendingBudget() throws Exception {
+        final MetricsStore store = MetricsStore.open(tempFile(), VERSION);
+        store.cache.setBudgetBytes(1024);
+        for (int i = 0; i < 1000; i++) {
+            store.put(FONT, i, i, 0, 0);
+        }
+        assertTrue(store.cache.getSizeBytes() <= 1024);
+        assertTrue(store.size() > 0);
+        assertEquals(1000 - store.size(), store.cache.getEvictionCount());
+        final int[] out = new int[3];
+        assertTrue(store.get(999, out)); // The newest entries are kept
+        assertFalse(store.get(0, out));
+
+        store.cache.trimToBytes(0);
+        assertEquals(0, store.size());
+    }
+
+    private static File tempFile() throws Exception {
+        final File file = File.createTempFile("metrics", ".store");
+        file.deleteOnExit();
+        assertTrue(file.delete()); // Start from no file at all
+        return file;
+    }
+
+    private static byte[] read(File file) throws Exception {
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            final byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws Exception {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+}
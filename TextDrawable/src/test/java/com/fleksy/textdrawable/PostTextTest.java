@@ -0,0 +1,50 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Posted text sits in a single slot until the next draw applies it, which applyPendingText()
+ * stands in for here.
+ */
+public class PostTextTest {
+
+    @Test
+    public void postText_keepsOnlyTheNewest() throws Exception {
+        final TextDrawable drawable = new TextDrawable(new TextPaint());
+        drawable.postText("a");
+        drawable.postText("ab");
+        drawable.postText("abc");
+        assertEquals("", drawable.getText()); // Nothing's applied before the draw
+        assertTrue(drawable.applyPendingText());
+        assertEquals("abc", drawable.getText());
+        assertFalse(drawable.applyPendingText());
+        assertEquals("abc", drawable.getText());
+    }
+
+    @Test
+    public void postText_turnsNullIntoEmptyText() throws Exception {
+        final TextDrawable drawable = new TextDrawable(new TextPaint());
+        drawable.setText("abc");
+        drawable.postText(null);
+        assertTrue(drawable.applyPendingText());
+        assertEquals("", drawable.getText());
+    }
+
+    @Test
+    public void setText_overridesPendingPosts() throws Exception {
+        final TextDrawable drawable = new TextDrawable(new TextPaint());
+        drawable.postText("posted");
+        drawable.setText("set");
+        assertFalse(drawable.applyPendingText()); // The post is out of date
+        assertEquals("set", drawable.getText());
+
+        drawable.postText("posted again"); // Posting after setText() still works
+        assertTrue(drawable.applyPendingText());
+        assertEquals("posted again", drawable.getText());
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.text.BoringLayout;
+import android.text.Layout;
+import android.text.StaticLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs on Robolectric, the recording needs real bounds and a real Picture. The layout is only
+ * ever drawn while recording, replays draw the picture instead, so counting the layout's draws
+ * counts the recordings.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class RecordingTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 50;
+
+    @Test
+    public void draw_replaysWhileNothingChanges() throws Exception {
+        final RecordingDrawable drawable = drawable();
+        final CountingCanvas canvas = new CountingCanvas();
+        drawable.draw(canvas);
+        drawable.draw(canvas);
+        drawable.draw(canvas);
+        assertEquals(1, drawable.layoutDraws);
+        assertEquals(3, canvas.pictureDraws);
+    }
+
+    @Test
+    public void draw_recordsAgainWhenTheTextChanges() throws Exception {
+        final RecordingDrawable drawable = drawable();
+        final CountingCanvas canvas = new CountingCanvas();
+        drawable.draw(canvas);
+        drawable.setText("changed");
+        drawable.draw(canvas);
+        assertEquals(2, drawable.layoutDraws);
+        drawable.setText("changed"); // Same text, nothing to record
+        drawable.draw(canvas);
+        assertEquals(2, drawable.layoutDraws);
+    }
+
+    @Test
+    public void draw_recordsAgainWhenThePaintChanges() throws Exception {
+        final RecordingDrawable drawable = drawable();
+        final CountingCanvas canvas = new CountingCanvas();
+        drawable.draw(canvas);
+        drawable.setColor(Color.RED);
+        drawable.draw(canvas);
+        assertEquals(2, drawable.layoutDraws);
+        drawable.setStyle(Paint.Style.STROKE);
+        drawable.draw(canvas);
+        assertEquals(3, drawable.layoutDraws);
+        drawable.setTextSize(30);
+        drawable.draw(canvas);
+        assertEquals(4, drawable.layoutDraws);
+    }
+
+    @Test
+    public void draw_recordsAgainWhenTheBoundsChange() throws Exception {
+        final RecordingDrawable drawable = drawable();
+        final CountingCanvas canvas = new CountingCanvas();
+        drawable.draw(canvas);
+        drawable.setBounds(0, 0, WIDTH / 2, HEIGHT);
+        drawable.draw(canvas);
+        assertEquals(2, drawable.layoutDraws);
+    }
+
+    @Test
+    public void draw_keepsTheRecordingWhenOnlyTheAlphaChanges() throws Exception {
+        final RecordingDrawable drawable = drawable();
+        final CountingCanvas canvas = new CountingCanvas();
+        drawable.draw(canvas);
+        drawable.setAlpha(100); // Applied through a layer on top of the recording
+        drawable.draw(canvas);
+        drawable.setAlpha(255);
+        drawable.draw(canvas);
+        assertEquals(1, drawable.layoutDraws);
+        assertEquals(3, canvas.pictureDraws);
+        assertEquals(1, canvas.alphaLayers);
+    }
+
+    @Test
+    public void draw_drawsTheLayoutWhenRecordingIsOff() throws Exception {
+        final RecordingDrawable drawable = drawable();
+        drawable.setRecordingEnabled(false);
+        final CountingCanvas canvas = new CountingCanvas();
+        drawable.draw(canvas);
+        drawable.draw(canvas);
+        assertEquals(2, drawable.layoutDraws);
+        assertEquals(0, canvas.pictureDraws);
+    }
+
+    private static RecordingDrawable drawable() {
+        final RecordingDrawable drawable = new RecordingDrawable();
+        drawable.setRecordingEnabled(true);
+        drawable.setBounds(0, 0, WIDTH, HEIGHT);
+        return drawable;
+    }
+
+    /**
+     * Counts every time its layout gets drawn, always a StaticLayout so there's a single kind
+     * to count
+     */
+    private static final class RecordingDrawable extends TextDrawable {
+
+        int layoutDraws;
+
+        RecordingDrawable() {
+            super("record me", null, 20, Color.WHITE);
+        }
+
+        @Override
+        BoringLayout.Metrics boringMetrics(CharSequence text, int width) {
+            return null;
+        }
+
+        @Override
+        Layout makeStaticLayout(CharSequence text, int width) {
+            return new StaticLayout(text, getPaint(), width, Layout.Alignment.ALIGN_CENTER, 1, 0, false) {
+                @Override
+                public void draw(Canvas canvas) {
+                    layoutDraws++;
+                    super.draw(canvas);
+                }
+            };
+        }
+    }
+
+    /**
+     * Counts the pictures replayed on it and the layers they're faded through
+     */
+    private static final class CountingCanvas extends Canvas {
+
+        int pictureDraws;
+        int alphaLayers;
+
+        CountingCanvas() {
+            super(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        }
+
+        @Override
+        public void drawPicture(Picture picture) {
+            pictureDraws++;
+            super.drawPicture(picture);
+        }
+
+        @Override
+        public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha, int saveFlags) {
+            alphaLayers++;
+            return super.saveLayerAlpha(left, top, right, bottom, alpha, saveFlags);
+        }
+    }
+
+}
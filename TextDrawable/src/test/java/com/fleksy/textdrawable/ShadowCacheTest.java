@@ -0,0 +1,96 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs on Robolectric, masks are blurred into real bitmaps. Every test uses text no other test
+ * does, since the masks are cached for the whole process.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ShadowCacheTest {
+
+    private static final float RADIUS = 4;
+    private static final int WIDTH = 200;
+
+    @Test
+    public void get_sharesMasksBetweenLayoutsThatDrawTheSame() throws Exception {
+        final ShadowCache.Shadow shadow = shadow("shared", WIDTH, Paint.Style.FILL);
+        final int misses = ShadowCache.missCount();
+        assertSame(shadow, shadow("shared", WIDTH, Paint.Style.FILL));
+        assertEquals(misses, ShadowCache.missCount());
+
+        assertNotSame(shadow, shadow("shared!", WIDTH, Paint.Style.FILL));
+        assertNotSame(shadow, shadow("shared", WIDTH + 1, Paint.Style.FILL));
+        assertNotSame(shadow, shadow("shared", WIDTH, Paint.Style.STROKE));
+        assertEquals(misses + 3, ShadowCache.missCount());
+    }
+
+    @Test
+    public void draw_keysTheMaskOnTheLaidOutText() throws Exception {
+        final TextDrawable whole = drawable("first\nsecond\nthird");
+        final TextDrawable cut = drawable("first\nsecond\nthird");
+        cut.setMaxLines(1);
+        final Canvas canvas = canvas();
+        whole.draw(canvas);
+        final int misses = ShadowCache.missCount();
+        cut.draw(canvas); // Same full text, but only its first line is laid out
+        assertEquals(misses + 1, ShadowCache.missCount());
+    }
+
+    @Test
+    public void draw_blursAgainOnlyWhenTheMaskChanges() throws Exception {
+        final TextDrawable drawable = drawable("changes");
+        final Canvas canvas = canvas();
+        drawable.draw(canvas);
+        final int misses = ShadowCache.missCount();
+        drawable.draw(canvas);
+        drawable.setAlpha(100); // Applied when the mask is drawn
+        drawable.draw(canvas);
+        assertEquals(misses, ShadowCache.missCount());
+
+        drawable.setStyle(Paint.Style.STROKE);
+        drawable.draw(canvas);
+        assertEquals(misses + 1, ShadowCache.missCount());
+        drawable.setBounds(0, 0, WIDTH / 2, 50);
+        drawable.draw(canvas);
+        assertEquals(misses + 2, ShadowCache.missCount());
+        drawable.setText("changed");
+        drawable.draw(canvas);
+        assertEquals(misses + 3, ShadowCache.missCount());
+    }
+
+    private static ShadowCache.Shadow shadow(String text, int width, Paint.Style style) {
+        final TextPaint paint = new TextPaint();
+        paint.setTextSize(20);
+        paint.setStyle(style);
+        final Layout layout = new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_CENTER, 1, 0, false);
+        return ShadowCache.get(layout, text, RADIUS, Layout.Alignment.ALIGN_CENTER);
+    }
+
+    private static TextDrawable drawable(String text) {
+        final TextDrawable drawable = new TextDrawable(text, null, 20, Color.WHITE);
+        drawable.setShadow(Color.BLACK, RADIUS);
+        drawable.setShadowCacheEnabled(true);
+        drawable.setBounds(0, 0, WIDTH, 50);
+        return drawable;
+    }
+
+    private static Canvas canvas() {
+        return new Canvas(Bitmap.createBitmap(WIDTH, 50, Bitmap.Config.ARGB_8888));
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.fleksy.textdrawable;
+
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hit tests against a made up layout, every char 10px wide except the ones drawn as part of the
+ * char before them (low surrogates and combining marks), which is how the paint measures them.
+ */
+public class TextHitIndexTest {
+
+    private static final float WIDTH = 10;
+    private static final int LINE_HEIGHT = 20;
+
+    @Test
+    public void multiLine_findsLinesAndOffsets() throws Exception {
+        final TextHitIndex index = build("hello\nworld", Layout.DIR_LEFT_TO_RIGHT, 0, 6);
+        assertEquals(0, index.lineForY(-5)); // Clamped to the first line
+        assertEquals(1, index.lineForY(LINE_HEIGHT + 5));
+        assertEquals(1, index.lineForY(1000));
+        assertTrue(index.isWithinLines(LINE_HEIGHT * 2 - 1));
+        assertFalse(index.isWithinLines(LINE_HEIGHT * 2));
+
+        assertEquals(7, index.offsetForX(1, 14)); // Closer to the start of 'o'
+        assertEquals(8, index.offsetForX(1, 16));
+        assertEquals(5, index.offsetForX(0, 1000)); // Before the line break, not after it
+        assertEquals(8, index.characterForX(1, 25, false));
+        assertEquals(-1, index.characterForX(1, 60, false));
+        assertEquals(11, index.characterForX(1, 60, true));
+        assertEquals(6, index.characterForX(1, -5, true));
+    }
+
+    @Test
+    public void clusters_areNeverSplit() throws Exception {
+        // a, e + combining acute, an emoji (surrogate pair), b
+        final TextHitIndex index = build("aé😀b", Layout.DIR_LEFT_TO_RIGHT, 0);
+        assertEquals(0, index.characterForX(0, 5, false));
+        assertEquals(1, index.characterForX(0, 15, false));
+        assertEquals(3, index.characterForX(0, 25, false));
+        assertEquals(5, index.characterForX(0, 35, false));
+        assertEquals(3, index.offsetForX(0, 24));
+        assertEquals(5, index.offsetForX(0, 26));
+        for (int x = -5; x <= 45; x++) {
+            final int offset = index.offsetForX(0, x);
+            assertTrue("offset " + offset + " at x " + x, offset != 2 && offset != 4);
+            final int character = index.characterForX(0, x, true);
+            assertTrue("character " + character + " at x " + x, character != 2 && character != 4);
+        }
+    }
+
+    @Test
+    public void rightToLeft_runsFromTheRight() throws Exception {
+        final TextHitIndex index = build("abc", Layout.DIR_RIGHT_TO_LEFT, 0);
+        final float right = 3 * WIDTH; // The made up layout is exactly as wide as its widest line
+        assertEquals(0, index.characterForX(0, right - 5, false));
+        assertEquals(1, index.characterForX(0, right - 15, false));
+        assertEquals(2, index.characterForX(0, right - 25, false));
+        assertEquals(-1, index.characterForX(0, right - 35, false));
+        assertEquals(-1, index.characterForX(0, right + 5, false));
+        assertEquals(0, index.characterForX(0, right + 5, true));
+        assertEquals(3, index.characterForX(0, right - 35, true));
+        assertEquals(1, index.offsetForX(0, right - 12));
+        assertEquals(2, index.offsetForX(0, right - 16));
+    }
+
+    @Test
+    public void rebuild_reusesArraysForShorterText() throws Exception {
+        final TextHitIndex index = build("hello\nworld", Layout.DIR_LEFT_TO_RIGHT, 0, 6);
+        index.build(new FakeLayout("hi", Layout.DIR_LEFT_TO_RIGHT, 0));
+        assertEquals(0, index.lineForY(1000));
+        assertEquals(2, index.offsetForX(0, 1000));
+        assertFalse(index.isWithinLines(LINE_HEIGHT));
+    }
+
+    private static TextHitIndex build(String text, int direction, int... lineStarts) {
+        final TextHitIndex index = new TextHitIndex();
+        index.build(new FakeLayout(text, direction, lineStarts));
+        return index;
+    }
+
+    /**
+     * Measures every char WIDTH wide except the ones that join the char before them
+     */
+    private static final class FakePaint extends TextPaint {
+
+        @Override
+        public int getTextWidths(String text, int start, int end, float[] widths) {
+            return getTextWidths((CharSequence) text, start, end, widths);
+        }
+
+        @Override
+        public int getTextWidths(CharSequence text, int start, int end, float[] widths) {
+            for (int i = start; i < end; i++) {
+                final char c = text.charAt(i);
+                final boolean joins = Character.isLowSurrogate(c)
+                        || Character.getType(c) == Character.NON_SPACING_MARK;
+                widths[i - start] = joins ? 0 : WIDTH;
+            }
+            return end - start;
+        }
+    }
+
+    /**
+     * Lays text out on the lines given, every line LINE_HEIGHT tall and aligned to the start of
+     * its direction within a layout as wide as the widest line
+     */
+    private static final class FakeLayout extends StaticLayout {
+
+        private final String text;
+        private final int direction;
+        private final int[] starts;
+        private final TextPaint paint = new FakePaint();
+
+        FakeLayout(String text, int direction, int... lineStarts) {
+            super(text, new TextPaint(), 0, Alignment.ALIGN_NORMAL, 1, 0, false);
+            this.text = text;
+            this.direction = direction;
+            this.starts = lineStarts;
+        }
+
+        @Override
+        public CharSequence getText() {
+            return text;
+        }
+
+        @Override
+        public TextPaint getPaint() {
+            return paint;
+        }
+
+        @Override
+        public int getLineCount() {
+            return starts.length;
+        }
+
+        @Override
+        public int getLineStart(int line) {
+            return starts[line];
+        }
+
+        @Override
+        public int getLineEnd(int line) {
+            return line + 1 < starts.length ? starts[line + 1] : text.length();
+        }
+
+        @Override
+        public int getLineTop(int line) {
+            return line * LINE_HEIGHT;
+        }
+
+        @Override
+        public int getLineBottom(int line) {
+            return (line + 1) * LINE_HEIGHT;
+        }
+
+        @Override
+        public int getParagraphDirection(int line) {
+            return direction;
+        }
+
+        @Override
+        public float getLineLeft(int line) {
+            return direction == DIR_RIGHT_TO_LEFT ? widest() - lineWidth(line) : 0;
+        }
+
+        @Override
+        public float getLineRight(int line) {
+            return direction == DIR_RIGHT_TO_LEFT ? widest() : lineWidth(line);
+        }
+
+        private float lineWidth(int line) {
+            final float[] widths = new float[text.length()];
+            final int start = getLineStart(line);
+            int end = getLineEnd(line);
+            if (end > start && text.charAt(end - 1) == '\n') {
+                end--;
+            }
+            paint.getTextWidths(text, start, end, widths);
+            float width = 0;
+            for (int i = 0; i < end - start; i++) {
+                width += widths[i];
+            }
+            return width;
+        }
+
+        private float widest() {
+            float widest = 0;
+            for (int line = 0; line < starts.length; line++) {
+                widest = Math.max(widest, lineWidth(line));
+            }
+            return widest;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Color;
+import android.text.TextPaint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs on Robolectric, auto-fit only kicks in once the drawable has real bounds. Styles are
+ * given sizes way out of the fit range, so a style's size leaking through is easy to spot.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TextStyleAutoFitTest {
+
+    private static final float MIN_SIZE = 8;
+    private static final float MAX_SIZE = 40;
+    private static final String TEXT = "fit me";
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 50;
+
+    @Test
+    public void setTextStyle_keepsFittedSizeWhenOnlyColorsChange() throws Exception {
+        final TextDrawable drawable = fitting();
+        final TextStyle white = new TextStyle.Builder().setTextSize(100).setColor(Color.WHITE).build();
+        drawable.setTextStyle(white);
+        final float fitted = drawable.getTextSize();
+        assertEquals(fit(white), fitted, 0);
+
+        final TextStyle red = new TextStyle.Builder(white).setColor(Color.RED).build();
+        drawable.setTextStyle(red);
+        assertEquals(fitted, drawable.getTextSize(), 0);
+        final TextStyle shadow = new TextStyle.Builder(white).setShadow(Color.BLACK, 4).build();
+        drawable.setTextStyle(shadow);
+        assertEquals(fitted, drawable.getTextSize(), 0);
+        final TextStyle bigger = new TextStyle.Builder(white).setTextSize(200).build();
+        drawable.setTextStyle(bigger);
+        assertEquals(fitted, drawable.getTextSize(), 0);
+        // Not even looked up, the last fit was kept
+        assertEquals(0, red.fitCache().missCount() + shadow.fitCache().missCount() + bigger.fitCache().missCount());
+    }
+
+    @Test
+    public void setTextStyle_refitsWhenTheTextMeasuresDifferently() throws Exception {
+        final TextDrawable drawable = fitting();
+        final TextStyle plain = new TextStyle.Builder().setTextSize(101).build();
+        drawable.setTextStyle(plain);
+        assertEquals(fit(plain), drawable.getTextSize(), 0);
+
+        final TextStyle bold = new TextStyle.Builder(plain).setBold(true).build();
+        drawable.setTextStyle(bold);
+        assertEquals(1, bold.fitCache().missCount()); // Fitted again, with the bold paint
+        assertEquals(fit(bold), drawable.getTextSize(), 0);
+    }
+
+    private static TextDrawable fitting() {
+        final TextDrawable drawable = new TextDrawable(TEXT);
+        drawable.setAutoFit(MIN_SIZE, MAX_SIZE);
+        drawable.setBounds(0, 0, WIDTH, HEIGHT);
+        return drawable;
+    }
+
+    /**
+     * @return The size the text fits at with the style, fitted from scratch
+     */
+    private static float fit(TextStyle style) {
+        final TextPaint paint = new TextPaint();
+        paint.setTypeface(style.getTypeface());
+        paint.setFakeBoldText(style.isBold());
+        return TextDrawable.fitTextSize(paint, TEXT, WIDTH, HEIGHT, MIN_SIZE, MAX_SIZE);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.text.TextPaint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Styles are interned, so equal styles built anywhere are the same instance
+ */
+public class TextStyleTest {
+
+    @Test
+    public void build_internsEqualStyles() throws Exception {
+        final TextStyle first = new TextStyle.Builder().setTextSize(24).setColor(Color.WHITE)
+                .setShadow(Color.BLACK, 4).build();
+        final TextStyle second = new TextStyle.Builder().setShadow(Color.BLACK, 4)
+                .setColor(Color.WHITE).setTextSize(24).build();
+        assertSame(first, second);
+        assertSame(first, new TextStyle.Builder(first).build());
+        assertSame(first.fitCache(), second.fitCache());
+    }
+
+    @Test
+    public void build_keepsDifferentStylesApart() throws Exception {
+        final TextStyle base = new TextStyle.Builder().setTextSize(24).build();
+        final TextStyle stroked = new TextStyle.Builder(base).setStyle(Paint.Style.STROKE).build();
+        final TextStyle bigger = new TextStyle.Builder(base).setTextSize(32).build();
+        assertNotSame(base, stroked);
+        assertFalse(base.equals(stroked));
+        assertTrue(base.measuresLike(stroked)); // Outlines measure the same as filled text
+        assertFalse(base.measuresLike(bigger));
+        assertTrue(base.measuresLike(bigger, true)); // Auto-fit picks the size anyway
+        assertEquals(Paint.Style.STROKE, stroked.getStyle());
+        assertEquals(24, stroked.getTextSize(), 0);
+    }
+
+    @Test
+    public void drawable_dropsStyleOnceChangedDirectly() throws Exception {
+        final TextStyle style = new TextStyle.Builder().setTextSize(30).setBold(true).build();
+        final TextDrawable drawable = new TextDrawable(new TextPaint());
+        drawable.setTextStyle(style);
+        assertSame(style, drawable.getTextStyle());
+        assertEquals(30, drawable.getTextSize(), 0);
+
+        drawable.setColorFilter(null);
+        assertSame(style, drawable.getTextStyle());
+        drawable.setTextSize(12);
+        assertNull(drawable.getTextStyle());
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.fleksy.textdrawable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * What the current thread has allocated and how much CPU it has used, for the tests that keep
+ * an eye on both. Either reads 0 on a JVM that doesn't track it, check first.
+ */
+final class ThreadUsage {
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private ThreadUsage() {
+    }
+
+    /**
+     * @return True if allocatedBytes() means anything on this JVM
+     */
+    static boolean tracksAllocations() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            return hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled();
+        }
+        return false;
+    }
+
+    /**
+     * @return Bytes allocated by this thread so far, or 0 where the JVM doesn't track it
+     */
+    static long allocatedBytes() {
+        return tracksAllocations()
+                ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId())
+                : 0;
+    }
+
+    /**
+     * @return True if cpuNanos() means anything on this JVM
+     */
+    static boolean tracksCpu() {
+        return threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+    }
+
+    /**
+     * @return CPU time (ns) this thread has used so far, or 0 where the JVM doesn't track it
+     */
+    static long cpuNanos() {
+        return tracksCpu() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+}
@@ -0,0 +1,314 @@
+package com.fleksy.textdrawable;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.text.TextPaint;
+import android.view.View;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays typing traces against ScaleTextDrawable frame by frame on a virtual clock, counting
+ * what every frame asks of the canvas and the paint. Runs on the plain JVM against the mockable
+ * android.jar (unitTests.returnDefaultValues), so glyphs measure 10px a char and nothing is
+ * actually drawn, but the calls made are exactly the ones a device would see.
+ */
+public class TypingTraceReplayTest {
+
+    private static final long FRAME_MS = 16;
+    private static final float MS_PER_CHAR = 200;
+
+    /**
+     * Bytes a frame may allocate while animating, which should be nothing at all. The slack is
+     * for the odd allocation the JVM itself charges to the thread.
+     */
+    private static final long MAX_FRAME_BYTES = 512;
+
+    /**
+     * Bytes a frame may allocate when the text changes: the new text and its cluster tables
+     */
+    private static final long MAX_EVENT_FRAME_BYTES = 8 * 1024;
+
+    /**
+     * CPU the animating frames may take on average, a whole frame. They take a few microseconds
+     * on a desktop JVM, the rest is margin for slow or shared CI machines. Averaged, so a frame
+     * the JIT or a busy machine happens to land on can't fail it, measuring or laying out per
+     * frame is caught exactly by the call counts instead.
+     */
+    private static final long MAX_MEAN_FRAME_CPU_NANOS = FRAME_MS * 1000000;
+
+    private static final String[] ENGINES = {"scale", "fade", "slide-up", "typewriter", "evaporate"};
+
+    private static final String HEBREW = "\u05e9\u05dc\u05d5\u05dd"; // shalom
+
+    /**
+     * Typing a sentence fast enough that animations overlap, fixing a typo with backspaces,
+     * switching to an RTL language and back, then clearing it all.
+     */
+    private static TypingTrace typingTrace() {
+        final TypingTrace trace = new TypingTrace();
+        final String sentence = "the quick brwn";
+        long time = 0;
+        for (int i = 1; i <= sentence.length(); i++) {
+            trace.recordAnimateText(time, sentence.substring(0, i), false);
+            time += 45; // Faster than an animation lasts
+        }
+        trace.recordAnimateText(time += 120, "the quick brw", false);
+        trace.recordAnimateText(time += 90, "the quick br", false);
+        trace.recordAnimateText(time += 90, "the quick bro", false);
+        trace.recordAnimateText(time += 60, "the quick brow", false);
+        trace.recordAnimateText(time += 60, "the quick brown", false);
+        for (int i = 1; i <= HEBREW.length(); i++) {
+            trace.recordAnimateText(time += 70, HEBREW.substring(0, i), true);
+        }
+        trace.recordSetText(time += 400, "fox");
+        trace.recordAnimateText(time += 30, "fox jumps", false);
+        trace.recordAnimateText(time += 500, "", false);
+        return trace;
+    }
+
+    @Test
+    public void replay_isDeterministic() throws Exception {
+        final TypingTrace trace = typingTrace();
+        final Report first = replay(trace, "scale");
+        final Report second = replay(trace, "scale");
+        assertArrayEquals(first.drawCalls, second.drawCalls);
+        assertArrayEquals(first.measureCalls, second.measureCalls);
+    }
+
+    @Test
+    public void replay_staysWithinCallBudget() throws Exception {
+        final TypingTrace trace = typingTrace();
+        int longest = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            longest = Math.max(longest, trace.get(i).text.length());
+        }
+        for (String engine : ENGINES) {
+            replay(trace, engine); // Warm up, class loading and the JIT allocate and burn CPU too
+            assertWithinBudget(engine, replay(trace, engine), longest);
+        }
+    }
+
+    private static void assertWithinBudget(String engine, Report report, int longest) {
+        for (int frame = 0; frame < report.frames; frame++) {
+            // Every cluster of the old and new text at most once, plus a call per settled line
+            assertTrue(engine + " frame " + frame + " drew " + report.drawCalls[frame],
+                    report.drawCalls[frame] <= 2 * longest + 1);
+            // Everything is measured and allocated when the text changes, never while animating
+            if (report.eventFrame[frame]) {
+                assertTrue(engine + " frame " + frame + " allocated " + report.allocatedBytes[frame],
+                        report.allocatedBytes[frame] <= MAX_EVENT_FRAME_BYTES);
+            } else {
+                assertEquals(engine + " frame " + frame + " measured", 0, report.measureCalls[frame]);
+                assertTrue(engine + " frame " + frame + " allocated " + report.allocatedBytes[frame],
+                        report.allocatedBytes[frame] <= MAX_FRAME_BYTES);
+            }
+        }
+        long cpuNanos = 0;
+        int animating = 0;
+        for (int frame = 0; frame < report.frames; frame++) {
+            if (!report.eventFrame[frame]) {
+                cpuNanos += report.cpuNanos[frame];
+                animating++;
+            }
+        }
+        final long mean = cpuNanos / Math.max(animating, 1);
+        assertTrue(engine + " frames took " + mean + "ns on average", mean <= MAX_MEAN_FRAME_CPU_NANOS);
+    }
+
+    @Test
+    public void trace_survivesSerialization() throws Exception {
+        final TypingTrace trace = typingTrace();
+        trace.recordAnimateText(trace.getDuration() + 10, "tab\there\nnew line \\ done", false);
+        final TypingTrace parsed = TypingTrace.parse(trace.serialize());
+        assertEquals(trace.size(), parsed.size());
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(trace.get(i).time, parsed.get(i).time);
+            assertEquals(trace.get(i).type, parsed.get(i).type);
+            assertEquals(trace.get(i).text, parsed.get(i).text);
+            assertEquals(trace.get(i).rtlLanguage, parsed.get(i).rtlLanguage);
+        }
+    }
+
+    @Test
+    public void drawable_recordsItsCalls() throws Exception {
+        final ScaleTextDrawable drawable = new ScaleTextDrawable(MS_PER_CHAR, new CountingPaint());
+        final TypingTrace trace = new TypingTrace();
+        drawable.setTypingTrace(trace);
+        drawable.animateText("hi", false, new View(null));
+        drawable.setText("there");
+        assertEquals(2, trace.size());
+        assertEquals(TypingTrace.ANIMATE_TEXT, trace.get(0).type);
+        assertEquals(TypingTrace.SET_TEXT, trace.get(1).type);
+        assertEquals("there", trace.get(1).text);
+    }
+
+    /**
+     * Plays the trace back one frame at a time, making each call once the virtual clock passes it.
+     */
+    private static Report replay(TypingTrace trace, String engine) {
+        MetricsCache.CACHE.trimToBytes(0); // Start cold, so every replay measures the same
+        final CountingPaint paint = new CountingPaint();
+        final CountingCanvas canvas = new CountingCanvas();
+        final CharacterAnimationDrawable drawable = engine(engine, paint);
+        drawable.setTextSize(40);
+        final View parent = new View(null);
+
+        final int frames = (int) ((trace.getDuration() + 2 * MS_PER_CHAR) / FRAME_MS) + 1;
+        final Report report = new Report(frames);
+
+        int next = 0;
+        long animationStart = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            final long now = frame * FRAME_MS;
+            final long cpuBefore = ThreadUsage.cpuNanos();
+            final long allocatedBefore = ThreadUsage.allocatedBytes();
+            final int measuresBefore = paint.measureCalls;
+            final int drawsBefore = canvas.drawCalls;
+
+            while (next < trace.size() && trace.get(next).time <= now) {
+                final TypingTrace.Event event = trace.get(next++);
+                if (event.type == TypingTrace.ANIMATE_TEXT) {
+                    drawable.animateText(event.text, event.rtlLanguage, parent);
+                    animationStart = event.time;
+                } else {
+                    drawable.setText(event.text);
+                }
+                report.eventFrame[frame] = true;
+            }
+            drawable.setPlayTime(now - animationStart);
+            drawable.draw(canvas);
+
+            report.drawCalls[frame] = canvas.drawCalls - drawsBefore;
+            report.measureCalls[frame] = paint.measureCalls - measuresBefore;
+            report.allocatedBytes[frame] = ThreadUsage.allocatedBytes() - allocatedBefore;
+            report.cpuNanos[frame] = ThreadUsage.cpuNanos() - cpuBefore;
+        }
+        return report;
+    }
+
+    private static CharacterAnimationDrawable engine(String name, TextPaint paint) {
+        switch (name) {
+            case "scale":
+                return new ScaleTextDrawable(MS_PER_CHAR, paint);
+            case "fade":
+                return new FadeTextDrawable(MS_PER_CHAR, paint);
+            case "slide-up":
+                return new SlideUpTextDrawable(MS_PER_CHAR, paint);
+            case "typewriter":
+                return new TypewriterTextDrawable(MS_PER_CHAR, paint);
+            case "evaporate":
+                return new EvaporateTextDrawable(MS_PER_CHAR, paint);
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    private static final class Report {
+
+        final int frames;
+        final boolean[] eventFrame;
+        final int[] drawCalls;
+        final int[] measureCalls;
+        final long[] allocatedBytes;
+        final long[] cpuNanos;
+
+        Report(int frames) {
+            this.frames = frames;
+            eventFrame = new boolean[frames];
+            drawCalls = new int[frames];
+            measureCalls = new int[frames];
+            allocatedBytes = new long[frames];
+            cpuNanos = new long[frames];
+        }
+    }
+
+    /**
+     * Measures every char 10px wide and counts how often it's asked to
+     */
+    private static final class CountingPaint extends TextPaint {
+
+        int measureCalls;
+        private float textSize;
+        private int alpha = 255;
+
+        @Override
+        public float measureText(String text) {
+            measureCalls++;
+            return text.length() * 10;
+        }
+
+        @Override
+        public float measureText(String text, int start, int end) {
+            measureCalls++;
+            return (end - start) * 10;
+        }
+
+        @Override
+        public float measureText(CharSequence text, int start, int end) {
+            measureCalls++;
+            return (end - start) * 10;
+        }
+
+        @Override
+        public void setTextSize(float textSize) {
+            this.textSize = textSize;
+        }
+
+        @Override
+        public float getTextSize() {
+            return textSize;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override
+        public int getAlpha() {
+            return alpha;
+        }
+    }
+
+    /**
+     * Counts draw calls instead of drawing
+     */
+    private static final class CountingCanvas extends Canvas {
+
+        int drawCalls;
+
+        @Override
+        public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+            drawCalls++;
+        }
+
+        @Override
+        public void drawText(CharSequence text, int start, int end, float x, float y, Paint paint) {
+            drawCalls++;
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+            drawCalls++;
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+            drawCalls++;
+        }
+
+        @Override
+        public boolean getClipBounds(Rect bounds) {
+            bounds.left = 0;
+            bounds.top = 0;
+            bounds.right = 1080;
+            bounds.bottom = 1920;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.fleksy.textdrawable;
+
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cuts text down for max lines and ellipsizing with a paint that measures every char 10px wide,
+ * except the ones drawn as part of the char before them. Lines are WIDTH wide, so 10 chars.
+ */
+public class VisibleTextTest {
+
+    private static final int WIDTH = 100;
+
+    /**
+     * A size nothing else measures at, so no other test's paint shares the cached metrics
+     */
+    private static final float TEXT_SIZE = 13;
+
+    /**
+     * Same again for the paint with tracking, its runs measure differently
+     */
+    private static final float TRACKED_TEXT_SIZE = 14;
+
+    @Test
+    public void maxLines_wrapsBetweenWords() throws Exception {
+        final FixedWidthPaint paint = new FixedWidthPaint();
+        final TextDrawable drawable = drawable(paint, "the quick brown fox jumps", 2, null);
+        assertEquals("the quick brown fox", drawable.visibleText(WIDTH).toString());
+        assertEquals("one\ntwo", drawable(paint, "one\ntwo\nthree", 2, null).visibleText(WIDTH).toString());
+        assertEquals(0, paint.breakCalls); // Everything comes from cached advances
+    }
+
+    @Test
+    public void maxLines_breaksWordsTooLongForALine() throws Exception {
+        final FixedWidthPaint paint = new FixedWidthPaint();
+        assertEquals("abcdefghij", drawable(paint, "abcdefghijklmno", 1, null).visibleText(WIDTH).toString());
+        final TextDrawable fits = drawable(paint, "abcdefghijklmno pq", 2, null);
+        assertEquals("abcdefghijklmno pq", fits.visibleText(WIDTH).toString());
+        // Spaces at the end of a line hang past the edge instead of wrapping
+        final TextDrawable spaces = drawable(paint, "abcdefghij   klm", 1, null);
+        assertEquals("abcdefghij", spaces.visibleText(WIDTH).toString());
+    }
+
+    @Test
+    public void ellipsize_neverSplitsClusters() throws Exception {
+        final FixedWidthPaint paint = new FixedWidthPaint();
+        final TextUtils.TruncateAt end = TextUtils.TruncateAt.END;
+        assertEquals("the quick\u2026",
+                drawable(paint, "the quick brown", 1, end).visibleText(WIDTH).toString());
+        // e and a combining acute are a single cluster
+        assertEquals("abcdefghe\u0301\u2026",
+                drawable(paint, "abcdefghe\u0301xyz", 1, end).visibleText(WIDTH).toString());
+        assertEquals("abcdefgh\uD83D\uDE00\u2026",
+                drawable(paint, "abcdefgh\uD83D\uDE00xyz", 1, end).visibleText(WIDTH).toString());
+        // No room for the emoji and the ellipsis, so neither half of it stays
+        assertEquals("abcdefgh\u2026",
+                drawable(paint, "abcdefgh\uD83D\uDE00xyz", 1, end).visibleText(WIDTH - 5).toString());
+        assertEquals("one\ntwo\u2026",
+                drawable(paint, "one\ntwo\nthree", 2, end).visibleText(WIDTH).toString());
+    }
+
+    @Test
+    public void lastLine_fitsWhenMeasuredWhole() throws Exception {
+        final FixedWidthPaint paint = new FixedWidthPaint();
+        paint.tracking = 1;
+        // Ten chars add up to a line from their advances, but measure 109px together
+        assertEquals("abcdefghi", drawable(paint, "abcdefghij klm", 1, null).visibleText(WIDTH).toString());
+        assertEquals("the quick", drawable(paint, "the quick brown", 1, null).visibleText(WIDTH).toString());
+        assertEquals("one\nabcdefghi",
+                drawable(paint, "one\nabcdefghij", 2, null).visibleText(WIDTH).toString());
+        // Backs up to where the line wraps rather than cutting the word
+        assertEquals("abc", drawable(paint, "abc defghij", 1, null).visibleText(WIDTH).toString());
+        // With a line to spare the layout can wrap it
+        assertEquals("abcdefghij", drawable(paint, "abcdefghij", 2, null).visibleText(WIDTH).toString());
+    }
+
+    @Test
+    public void lastLine_leavesRoomForTheEllipsis() throws Exception {
+        final FixedWidthPaint paint = new FixedWidthPaint();
+        paint.tracking = 1;
+        final TextUtils.TruncateAt end = TextUtils.TruncateAt.END;
+        // "the quick" measures 98px, no room left for the ellipsis
+        assertEquals("the quic\u2026",
+                drawable(paint, "the quick brown", 1, end).visibleText(WIDTH).toString());
+        assertEquals("abcdefgh\u2026", drawable(paint, "abcdefghij", 1, end).visibleText(WIDTH).toString());
+    }
+
+    @Test
+    public void unlimited_isLeftAlone() throws Exception {
+        final FixedWidthPaint paint = new FixedWidthPaint();
+        final TextDrawable drawable = drawable(paint, "the quick brown fox jumps", Integer.MAX_VALUE, null);
+        assertEquals("the quick brown fox jumps", drawable.visibleText(WIDTH).toString());
+        assertEquals("short", drawable(paint, "short", 1, null).visibleText(WIDTH).toString());
+    }
+
+    private static TextDrawable drawable(FixedWidthPaint paint, String text, int maxLines,
+                                         TextUtils.TruncateAt ellipsize) {
+        final TextDrawable drawable = new TextDrawable(paint);
+        drawable.setTextSize(paint.tracking == 0 ? TEXT_SIZE : TRACKED_TEXT_SIZE);
+        drawable.setMaxLines(maxLines);
+        drawable.setEllipsize(ellipsize);
+        drawable.setText(text);
+        return drawable;
+    }
+
+    /**
+     * Measures every char 10px wide except the ones that join the char before them, plus any
+     * tracking between them when measured together, and counts the native line breaking it's
+     * asked to do
+     */
+    private static final class FixedWidthPaint extends TextPaint {
+
+        int breakCalls;
+        float tracking;
+        private float textSize;
+
+        @Override
+        public float measureText(String text) {
+            return measureText(text, 0, text.length());
+        }
+
+        @Override
+        public float measureText(String text, int start, int end) {
+            return measureText((CharSequence) text, start, end);
+        }
+
+        @Override
+        public float measureText(CharSequence text, int start, int end) {
+            float width = 0;
+            for (int i = start; i < end; i++) {
+                final char c = text.charAt(i);
+                if (!Character.isLowSurrogate(c) && Character.getType(c) != Character.NON_SPACING_MARK) {
+                    width += width == 0 ? 10 : 10 + tracking;
+                }
+            }
+            return width;
+        }
+
+        @Override
+        public int breakText(CharSequence text, int start, int end, boolean measureForwards,
+                             float maxWidth, float[] measuredWidth) {
+            breakCalls++;
+            return super.breakText(text, start, end, measureForwards, maxWidth, measuredWidth);
+        }
+
+        @Override
+        public void setTextSize(float textSize) {
+            this.textSize = textSize;
+        }
+
+        @Override
+        public float getTextSize() {
+            return textSize;
+        }
+    }
+
+}